@@ -17,21 +17,49 @@ package cyou.obliquerays.media;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.DayOfWeek;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.logging.LogManager;
 
+import cyou.obliquerays.media.command.NhkBackfill;
 import cyou.obliquerays.media.command.NhkRecorder;
 import cyou.obliquerays.media.config.RadioProperties;
+import cyou.obliquerays.media.guide.GuideRefresher;
+import cyou.obliquerays.media.guide.ProgramGuide;
+import cyou.obliquerays.media.hls.MirrorSelector;
+import cyou.obliquerays.media.jfr.RecordingPublishedEvent;
+import cyou.obliquerays.media.publish.ObjectStoragePublisher;
+import cyou.obliquerays.media.publish.S3Client;
+import cyou.obliquerays.media.schedule.RecorderFactory;
+import cyou.obliquerays.media.schedule.RecordingProgram;
+import cyou.obliquerays.media.schedule.RecordingSchedule;
+import cyou.obliquerays.media.schedule.RecordingScheduler;
+import cyou.obliquerays.media.schedule.RecordingSlot;
+import cyou.obliquerays.media.schedule.ScheduleSimulator;
+import cyou.obliquerays.media.schedule.SimulatedClock;
+import cyou.obliquerays.media.store.RecordingDeduplicator;
+import cyou.obliquerays.media.store.SegmentRingBuffer;
+import cyou.obliquerays.media.store.StationMonitor;
 import cyou.obliquerays.status.LockFileStatus;
+import cyou.obliquerays.status.RequestFileStatus;
 
 /**
  * NHKラジオ録音処理
@@ -40,14 +68,34 @@ public class RadioRecProcess {
     /** ロガー */
     private static final Logger LOG = System.getLogger(RadioRecProcess.class.getName());
 
+    /** リングバッファ出力ファイル名の日時フォーマット */
+    private static final DateTimeFormatter DUMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
     /** スレッド管理 */
-	private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+	private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(3);
+
+	/** 録音ファイルのアップロード、無効な場合はnull */
+	private final ObjectStoragePublisher publisher;
+
+	/** 録音開始日時を決める時計 */
+	private final Clock clock;
+
+	/** 録音予定の判定と録音処理の実行、番組表の更新時に録音予定を差し替え */
+	private final RecordingScheduler scheduler;
+
+	/** 番組表の更新スレッド、無効な場合はnull */
+	private final ScheduledExecutorService guideExecutor;
 
 	/**
-	 * デフォルトコンストラクタ
+	 * コンストラクタ
+	 * @param _clock 録音開始日時を決める時計
+	 * @param _factory 録音処理の生成
 	 * @throws IOException ファイル操作失敗
 	 */
-	private RadioRecProcess() throws IOException {
+	private RadioRecProcess(Clock _clock, RecorderFactory _factory) throws IOException {
+		this.clock = Objects.requireNonNull(_clock);
+		this.scheduler = new RecordingScheduler(new RecordingSchedule(RadioProperties.getProperties().getPrograms()),
+				this.clock, _factory, this.executor);
 
 		var lockFile = Path.of(this.getClass().getSimpleName() + ".lock");
     	try {
@@ -58,6 +106,105 @@ public class RadioRecProcess {
 			LOG.log(Level.ERROR, "プロセス実行時存在ファイルの管理に失敗#" + lockFile, e);
 			throw e;
 		}
+
+		if (RadioProperties.getProperties().getRingMinutes() > 0L) {
+			var ring = new SegmentRingBuffer(
+					Duration.ofMinutes(RadioProperties.getProperties().getRingMinutes()),
+					Math.multiplyExact(RadioProperties.getProperties().getRingCapacityMegabytes(), 1024L * 1024L));
+			this.executor.submit(new StationMonitor(new MirrorSelector(RadioProperties.getProperties().getRadios()), ring));
+			var dumpFile = Path.of(this.getClass().getSimpleName() + ".dump");
+			var dumpFileStatus = new RequestFileStatus(dumpFile, lines -> dump(ring, lines, this.clock));
+			this.executor.scheduleWithFixedDelay(dumpFileStatus, 5L, 1L, TimeUnit.SECONDS);
+		}
+
+		this.publisher = newPublisher(this.scheduler::isRecording);
+		if (Objects.nonNull(this.publisher))
+			this.publisher.resume(Path.of(RadioProperties.getProperties().getBaseDir()));
+
+		URI guideUri = RadioProperties.getProperties().getGuideUri();
+		if (Objects.nonNull(guideUri)) {
+			this.guideExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "guide");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+			this.guideExecutor.scheduleWithFixedDelay(new GuideRefresher(guideUri, this.clock, this::reschedule),
+					0L, Math.max(1L, RadioProperties.getProperties().getGuideRefreshMinutes()), TimeUnit.MINUTES);
+		} else {
+			this.guideExecutor = null;
+		}
+	}
+
+	/**
+	 * 番組表から録音予定を作成して差し替え<br>
+	 * 番組表の更新スレッドで実行し、録音中の処理は待たずに次の判定から反映
+	 * @param _guide 番組表
+	 */
+	private void reschedule(ProgramGuide _guide) {
+		RadioProperties prop = RadioProperties.getProperties();
+		List<RecordingSlot> slots = _guide.resolve(prop.getGuideTitles(), LocalDateTime.now(this.clock),
+				Duration.ofSeconds(prop.getStartAdjustmentSeconds()), Duration.ofSeconds(prop.getEndAdjustmentSeconds()));
+		this.scheduler.setSchedule(new RecordingSchedule(prop.getPrograms(), slots));
+		LOG.log(Level.INFO, "番組表から録音予定を作成 録音枠 = " + slots.size());
+	}
+
+	/**
+	 * 録音ファイルのアップロードを生成
+	 * @param _busy 録音中の判定
+	 * @return 録音ファイルのアップロード、無効な場合はnull
+	 */
+	private static ObjectStoragePublisher newPublisher(BooleanSupplier _busy) {
+		RadioProperties prop = RadioProperties.getProperties();
+		if (!prop.isS3())
+			return null;
+		S3Client client = new S3Client(prop.getS3Endpoint(), prop.getS3Region(), prop.getS3Bucket(), prop.getS3AccessKey(), prop.getS3SecretKey());
+		return new ObjectStoragePublisher(client, prop.getS3Prefix(),
+				Math.multiplyExact(prop.getS3PartSizeMegabytes(), 1024 * 1024), prop.getS3Concurrency(),
+				prop.getS3BandwidthKilobytes() * 1024L, prop.isS3DeleteLocal(), _busy);
+	}
+
+	/**
+	 * リングバッファから指定した時間帯をファイルへ出力<br>
+	 * 要求ファイルの1行目に「開始 終了」をyyyy-MM-ddTHH:mm[:ss]もしくはHH:mm[:ss]で指定<br>
+	 * 時刻のみの終了はリングバッファの最新の放送時刻、開始は終了以前で直近の日時
+	 * @param _ring リングバッファ
+	 * @param _lines 要求ファイルの内容
+	 * @param _clock タイムゾーンと、リングバッファが空の場合の現在日時を決める時計
+	 */
+	private static void dump(SegmentRingBuffer _ring, List<String> _lines, Clock _clock) {
+		String[] range = _lines.stream().map(String::strip).filter(line -> !line.isEmpty())
+				.findFirst().orElse("").split("\\s+");
+		if (range.length < 2) {
+			LOG.log(Level.ERROR, "リングバッファ出力の時間帯が不正#" + _lines);
+			return;
+		}
+		Instant newest = _ring.getNewest();
+		LocalDateTime latest = Objects.isNull(newest) ? LocalDateTime.now(_clock) : LocalDateTime.ofInstant(newest, _clock.getZone());
+		LocalDateTime to = parseDateTime(range[1], latest);
+		LocalDateTime from = parseDateTime(range[0], to);
+		String name = new StringBuilder("ring-")
+				.append(from.format(DUMP_FORMATTER)).append("-")
+				.append(to.format(DUMP_FORMATTER)).append(".ts").toString();
+		Path file = Path.of(RadioProperties.getProperties().getBaseDir(), name).toAbsolutePath().normalize();
+		try {
+			_ring.dump(from.atZone(_clock.getZone()).toInstant(), to.atZone(_clock.getZone()).toInstant(), file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * 日時の解析、時刻のみの場合は基準日時以前で直近の日時
+	 * @param _text yyyy-MM-ddTHH:mm[:ss]もしくはHH:mm[:ss]
+	 * @param _latest 基準日時
+	 * @return 日時
+	 */
+	static LocalDateTime parseDateTime(String _text, LocalDateTime _latest) {
+		if (_text.contains("T"))
+			return LocalDateTime.parse(_text);
+		LocalDateTime dateTime = _latest.toLocalDate().atTime(LocalTime.parse(_text));
+		return dateTime.isAfter(_latest) ? dateTime.minusDays(1L) : dateTime;
 	}
 
 	/**
@@ -68,22 +215,9 @@ public class RadioRecProcess {
 
 		try {
 			do {
-				if (!RadioProperties.getProperties().getDayOfWeeks().contains(DayOfWeek.from(LocalDate.now()))) {
-					LOG.log(Level.DEBUG, "待機");
-					TimeUnit.HOURS.sleep(1L);
-					continue;
-				}
-
-				LocalTime start = RadioProperties.getProperties().getStart();
-				LocalTime end = RadioProperties.getProperties().getEnd();
-				if (start.minusMinutes(2L).isAfter(LocalTime.now()) || end.minusMinutes(1L).isBefore(LocalTime.now())) {
-					LOG.log(Level.DEBUG, "待機");
-					TimeUnit.MINUTES.sleep(1L);
-					continue;
-				}
-
-				Future<Path> future = this.executor.submit(new NhkRecorder());
-				LOG.log(Level.INFO, "録音ファイル = "+ future.get());
+				Path mp3path = this.scheduler.step();
+				if (Objects.nonNull(mp3path))
+					publish(mp3path, this.publisher);
 
 			} while (RadioProperties.getProperties().isProcess());
 
@@ -93,13 +227,92 @@ public class RadioRecProcess {
 
 		} finally {
 
+			if (Objects.nonNull(this.guideExecutor))
+				this.guideExecutor.shutdownNow();
 			this.executor.shutdown();
 			if (!this.executor.awaitTermination(10L, TimeUnit.SECONDS) && !this.executor.isTerminated()) {
 				this.executor.shutdownNow();
 			}
+			if (Objects.nonNull(this.publisher)) {
+				if (!RadioProperties.getProperties().isProcess())
+					this.publisher.await(1L, TimeUnit.HOURS);
+				this.publisher.close();
+			}
 		}
 	}
 
+	/**
+	 * 録音ファイルの公開<br>
+	 * アップロードする場合は公開イベントをアップロード完了時に記録
+	 * @param _mp3path 録音ファイル
+	 * @param _publisher 録音ファイルのアップロード、無効な場合はnull
+	 * @throws IOException 録音ファイルの操作失敗
+	 * @throws InterruptedException 重複排除中のスレッド割り込み
+	 */
+	private static void publish(Path _mp3path, ObjectStoragePublisher _publisher) throws IOException, InterruptedException {
+		LOG.log(Level.INFO, "録音ファイル = "+ _mp3path);
+
+		if (RadioProperties.getProperties().isDedup() && Files.exists(_mp3path)) {
+			try {
+				new RecordingDeduplicator(_mp3path.getParent()).deduplicate(_mp3path);
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "重複排除に失敗、録音ファイルはそのまま公開#" + _mp3path, e);
+			}
+		}
+
+		if (Objects.nonNull(_publisher) && Files.exists(_mp3path)) {
+			_publisher.submit(_mp3path);
+			return;
+		}
+
+		RecordingPublishedEvent published = new RecordingPublishedEvent();
+		if (published.isEnabled()) {
+			published.file = _mp3path.toString();
+			published.destination = _mp3path.toString();
+			published.size = Files.exists(_mp3path) ? Files.size(_mp3path) : 0L;
+			published.commit();
+		}
+	}
+
+	/**
+	 * オンデマンド配信から録音
+	 * @param args プログラム引数「backfill [プレイリストのURL] [放送日yyyy-MM-dd（省略時は当日）]」
+	 * @param _clock 当日を決める時計
+	 * @throws Exception 録音失敗
+	 */
+	private static void backfill(String[] args, Clock _clock) throws Exception {
+		LocalDate date = args.length > 2 ? LocalDate.parse(args[2]) : LocalDate.now(_clock);
+		NhkBackfill backfill = new NhkBackfill(URI.create(args[1]), date);
+		ObjectStoragePublisher publisher = newPublisher(() -> false);
+		publish(backfill.call(), publisher);
+		if (Objects.nonNull(publisher)) {
+			publisher.await(1L, TimeUnit.HOURS);
+			publisher.close();
+		}
+	}
+
+	/**
+	 * 録音予定の模擬実行<br>
+	 * 録音せずに模擬時計を進めて録音予定の判定を繰り返し、結果と判定時間をログ出力
+	 * @param args プログラム引数「simulate [日数（初期値：365）] [乱数で生成する番組数（省略時は設定ファイルの番組）]」
+	 * @param _clock 模擬実行の開始日を決める時計
+	 * @throws Exception 模擬実行失敗
+	 */
+	private static void simulate(String[] args, Clock _clock) throws Exception {
+		long days = args.length > 1 ? Long.parseLong(args[1]) : 365L;
+		List<RecordingProgram> programs = args.length > 2
+				? ScheduleSimulator.randomPrograms(Integer.parseInt(args[2]), 0L)
+				: RadioProperties.getProperties().getPrograms();
+		ZonedDateTime from = LocalDate.now(_clock).atStartOfDay(_clock.getZone());
+		SimulatedClock clock = new SimulatedClock(from.toInstant(), from.getZone());
+		RecorderFactory factory = (slot, c) -> () -> {
+			clock.advance(slot.getDuration(LocalDateTime.now(c)));
+			return RadioProperties.getProperties().getMp3FilePath(slot.getStart().toLocalDate(), slot.getProgram().getFilePrefix());
+		};
+		ScheduleSimulator simulator = new ScheduleSimulator(new RecordingSchedule(programs), clock, from.toLocalDateTime().plusDays(days), factory);
+		LOG.log(Level.INFO, "模擬実行結果#" + simulator.run());
+	}
+
 	/**
 	 * エントリーポイント
 	 * @param args プログラム引数
@@ -121,8 +334,15 @@ public class RadioRecProcess {
         }
 
         try {
-    		RadioRecProcess process = new RadioRecProcess();
-    		process.execute();
+        	Clock clock = Clock.systemDefaultZone();
+        	if (Objects.nonNull(args) && args.length > 1 && "backfill".equals(args[0])) {
+        		backfill(args, clock);
+        	} else if (Objects.nonNull(args) && args.length > 0 && "simulate".equals(args[0])) {
+        		simulate(args, clock);
+        	} else {
+        		RadioRecProcess process = new RadioRecProcess(clock, NhkRecorder::new);
+        		process.execute();
+        	}
         } catch (InterruptedException e) {
         	LOG.log(Level.INFO, "割り込み終了", e);
         	returnCode = 0;
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.command;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * ID3v2.3タグのチャプター（CHAP、CTOCフレーム）<br>
+ * FFMPEGがタグの末尾に確保したパディングへ書き込み、音声データは読み書きしない
+ */
+final class Id3Chapters {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(Id3Chapters.class.getName());
+
+    /** チャプターを書き込むために確保するパディングのバイト数 */
+    static final int PADDING = 8192;
+
+    /** ID3v2タグヘッダーのバイト数 */
+    private static final int HEADER = 10;
+
+    /** CTOCフレームの子要素数の上限 */
+    private static final int MAX_CHAPTERS = 255;
+
+	/** インスタンス化しない */
+	private Id3Chapters() {}
+
+	/**
+	 * チャプターの書き込み
+	 * @param _mp3path MP3ファイル
+	 * @param _title チャプター名の接頭辞
+	 * @param _starts チャプターの開始時間、先頭は0
+	 * @param _end 録音の終了時間
+	 * @return 書き込んだチャプター数、パディングが不足する場合は0
+	 * @throws IOException MP3ファイルの操作失敗
+	 */
+	static int write(Path _mp3path, String _title, List<Duration> _starts, Duration _end) throws IOException {
+		List<Duration> starts = _starts.stream().filter(start -> start.compareTo(_end) < 0).distinct().sorted().limit(MAX_CHAPTERS).toList();
+		if (starts.size() < 2) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(_mp3path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			channel.read(header, 0L);
+			header.flip();
+			if (header.remaining() < HEADER || header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3' || header.get(3) != 3) {
+				LOG.log(Level.WARNING, "ID3v2.3タグがないためチャプターを省略#" + _mp3path);
+				return 0;
+			}
+			int size = syncsafe(header, 6);
+			ByteBuffer tag = ByteBuffer.allocate(size);
+			channel.read(tag, HEADER);
+			tag.flip();
+			int used = 0;
+			while (used + HEADER <= tag.limit() && tag.get(used) != 0 && tag.getInt(used + 4) >= 0) {
+				used += HEADER + tag.getInt(used + 4);
+			}
+
+			byte[] frames = frames(_title, starts, _end);
+			if (used + frames.length > size) {
+				LOG.log(Level.WARNING, "ID3v2.3タグのパディング不足のためチャプターを省略 " + frames.length + "/" + (size - used) + "bytes#" + _mp3path);
+				return 0;
+			}
+			channel.write(ByteBuffer.wrap(frames), (long) HEADER + used);
+		}
+		LOG.log(Level.INFO, "チャプター数 = " + starts.size() + "#" + _mp3path);
+		return starts.size();
+	}
+
+	/**
+	 * CTOCフレームとCHAPフレーム
+	 * @param _title チャプター名の接頭辞
+	 * @param _starts 昇順のチャプターの開始時間
+	 * @param _end 録音の終了時間
+	 * @return フレームのバイト列
+	 */
+	private static byte[] frames(String _title, List<Duration> _starts, Duration _end) {
+		ByteArrayOutputStream toc = new ByteArrayOutputStream();
+		toc.writeBytes(cstring("toc"));
+		toc.write(0x03);// 最上位、順序あり
+		toc.write(_starts.size());
+		ByteArrayOutputStream chapters = new ByteArrayOutputStream();
+		for (int i = 0; i < _starts.size(); i++) {
+			String id = "chp" + i;
+			toc.writeBytes(cstring(id));
+			Duration end = i + 1 < _starts.size() ? _starts.get(i + 1) : _end;
+			ByteBuffer chap = ByteBuffer.allocate(16);
+			chap.putInt((int) _starts.get(i).toMillis()).putInt((int) end.toMillis()).putInt(-1).putInt(-1);
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			body.writeBytes(cstring(id));
+			body.writeBytes(chap.array());
+			body.writeBytes(frame("TIT2", text(_title + " " + (i + 1))));
+			chapters.writeBytes(frame("CHAP", body.toByteArray()));
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(frame("CTOC", toc.toByteArray()));
+		out.writeBytes(chapters.toByteArray());
+		return out.toByteArray();
+	}
+
+	/**
+	 * ID3v2.3フレーム
+	 * @param _id フレームID
+	 * @param _body フレームの内容
+	 * @return フレームのバイト列
+	 */
+	private static byte[] frame(String _id, byte[] _body) {
+		ByteBuffer frame = ByteBuffer.allocate(HEADER + _body.length);
+		frame.put(_id.getBytes(StandardCharsets.US_ASCII)).putInt(_body.length).putShort((short) 0).put(_body);
+		return frame.array();
+	}
+
+	/**
+	 * UTF-16（BOM付き）のテキストフレームの内容
+	 * @param _text テキスト
+	 * @return テキストフレームの内容
+	 */
+	private static byte[] text(String _text) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0x01);
+		out.writeBytes(_text.getBytes(StandardCharsets.UTF_16));
+		return out.toByteArray();
+	}
+
+	/**
+	 * NUL終端のISO-8859-1文字列
+	 * @param _text 文字列
+	 * @return バイト列
+	 */
+	private static byte[] cstring(String _text) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(_text.getBytes(StandardCharsets.ISO_8859_1));
+		out.write(0);
+		return out.toByteArray();
+	}
+
+	/**
+	 * 同期安全整数（7ビット×4バイト）の読み取り
+	 * @param _buffer バッファ
+	 * @param _index 位置
+	 * @return 整数
+	 */
+	private static int syncsafe(ByteBuffer _buffer, int _index) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 7) | (_buffer.get(_index + i) & 0x7F);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.command;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import cyou.obliquerays.media.config.RadioProperties;
+import cyou.obliquerays.media.hls.HlsClient;
+import cyou.obliquerays.media.hls.HlsPlaylist;
+import cyou.obliquerays.media.hls.HlsSegment;
+import cyou.obliquerays.media.store.AudioFingerprint;
+
+/**
+ * オンデマンド配信（VOD）のHLSプレイリストから録音<br>
+ * セグメントファイル（.ts）を同時ダウンロード数の2倍まで先読みし、順番通りにFFMPEGへ渡して音声ファイル（.mp3）を保存<br>
+ * ライブ録音と違い実時間を待たずに放送終了後の番組を取得
+ */
+public class NhkBackfill implements Callable<Path> {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(NhkBackfill.class.getName());
+
+    /** 1リクエストのタイムアウト */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30L);
+
+    /** オンデマンド配信のプレイリスト */
+    private final URI playlist;
+
+    /** 放送日 */
+    private final LocalDate date;
+
+    /** エンコード後のMP3ファイル */
+    private final Path mp3path;
+
+	/**
+	 * コンストラクタ
+	 * @param _playlist オンデマンド配信のプレイリスト
+	 * @param _date 放送日、録音ファイル名に使用
+	 */
+	public NhkBackfill(URI _playlist, LocalDate _date) {
+		this.playlist = Objects.requireNonNull(_playlist);
+		this.date = Objects.requireNonNull(_date);
+		this.mp3path = RadioProperties.getProperties().getMp3FilePath(_date);
+	}
+
+	/** @return エンコード後のMP3ファイル */
+	public Path getMp3Path() {
+		return this.mp3path;
+	}
+
+	/**
+	 * オンデマンド配信をMP3へエンコード
+	 * @return エンコード結果のMP3ファイル
+	 * @throws IOException プレイリストの取得失敗、セグメントファイルの取得失敗、FFMPEG起動失敗
+	 * @throws InterruptedException 実行中にスレッド割り込み
+	 * @throws ExecutionException FFMPEG実行失敗
+	 */
+	public Path backfill() throws IOException, InterruptedException, ExecutionException {
+		HlsClient client = new HlsClient(RadioProperties.getProperties().getBackfillRetry(), TIMEOUT);
+		HlsPlaylist media = client.getPlaylist(this.playlist);
+		if (!media.isEndList()) {
+			throw new IllegalStateException("オンデマンド配信ではないプレイリスト（#EXT-X-ENDLISTなし）#" + media.getUri());
+		} else if (media.isEncrypted()) {
+			throw new IllegalStateException("暗号化されたプレイリストは未対応#" + media.getUri());
+		}
+		List<HlsSegment> segments = media.getSegments();
+		LOG.log(Level.INFO, "オンデマンド配信のセグメント数 = " + segments.size() + "#" + media.getUri());
+
+		List<Duration> chapters = new ArrayList<>(List.of(Duration.ZERO));
+		Duration total = Duration.ZERO;
+		for (HlsSegment segment : segments) {
+			if (segment.isDiscontinuity())
+				chapters.add(total);
+			total = total.plusMillis(Math.round(segment.getDuration() * 1000d));
+		}
+		String title = RadioProperties.getProperties().getProgramTitle();
+
+		Path part = NhkRecorder.partPath(this.mp3path);
+		boolean dedup = RadioProperties.getProperties().isDedup();
+		Process ffmpeg = null;
+		try {
+			ProcessBuilder ffmpegBuilder = new ProcessBuilder(NhkRecorder.getEncodingAttributes("pipe:0", null, part, title, this.date, true, dedup));
+			ffmpegBuilder.directory(Path.of(RadioProperties.getProperties().getBaseDir()).toAbsolutePath().normalize().toFile());
+			ffmpeg = ffmpegBuilder.start();
+		} catch (IOException e) {
+			LOG.log(Level.ERROR, "FFMPEGの起動に失敗", e);
+			throw e;
+		}
+
+		final Process encoder = ffmpeg;
+		Thread output = new Thread(() -> {
+			try (Stream<String> lines = new BufferedReader(new InputStreamReader(encoder.getErrorStream(), StandardCharsets.UTF_8)).lines()) {
+				lines.forEach(s -> LOG.log(Level.DEBUG, s));
+			}
+		}, "ffmpeg-" + this.mp3path.getFileName());
+		output.setDaemon(true);
+		output.start();
+		CompletableFuture<AudioFingerprint> fingerprint = dedup ? AudioFingerprint.readAsync(ffmpeg.getInputStream()) : null;
+
+		int concurrency = Math.max(1, RadioProperties.getProperties().getBackfillConcurrency());
+		ExecutorService downloader = Executors.newFixedThreadPool(concurrency);
+		try {
+			Deque<Future<byte[]>> window = new ArrayDeque<>(concurrency * 2);
+			Iterator<HlsSegment> pending = segments.iterator();
+			try (OutputStream stdin = ffmpeg.getOutputStream()) {
+				for (int i = 1; i <= segments.size(); i++) {
+					while (pending.hasNext() && window.size() < concurrency * 2) {
+						HlsSegment segment = pending.next();
+						window.add(downloader.submit(() -> client.getSegment(segment)));
+					}
+					byte[] ts = window.poll().get();
+					stdin.write(ts);
+					LOG.log(Level.DEBUG, "セグメント " + i + "/" + segments.size() + " " + ts.length + "bytes");
+				}
+			}
+			Future<Boolean> result = ffmpeg.onExit().thenApply(p -> p.exitValue() == 0);
+			output.join();
+			if (result.get()) {
+				LOG.log(Level.INFO, "MP3エンコード終了 exitCode = " + ffmpeg.exitValue());
+			} else {
+				LOG.log(Level.ERROR, "MP3エンコード終了 exitCode = " + ffmpeg.exitValue());
+				throw new IOException("MP3エンコード失敗 exitCode = " + ffmpeg.exitValue() + "#" + this.mp3path);
+			}
+			if (!Files.exists(part) || Files.size(part) == 0L)
+				throw new IOException("MP3エンコード失敗、録音ファイルなし#" + this.mp3path);
+			Id3Chapters.write(part, title, chapters, total);
+			NhkRecorder.complete(part, this.mp3path, fingerprint);
+		} catch (InterruptedException | ExecutionException e) {
+			LOG.log(Level.ERROR, "オンデマンド配信の取得を中断", e);
+			throw e;
+		} finally {
+			downloader.shutdownNow();
+			downloader.awaitTermination(10L, TimeUnit.SECONDS);
+			ffmpeg.destroyForcibly();
+			Files.deleteIfExists(part);
+		}
+
+		return this.mp3path;
+	}
+
+	@Override
+	public Path call() throws Exception {
+		Path mp3path = this.backfill();
+		return mp3path;
+	}
+}
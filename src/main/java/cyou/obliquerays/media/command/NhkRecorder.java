@@ -18,20 +18,35 @@ package cyou.obliquerays.media.command;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
 import java.time.Duration;
-import java.time.LocalTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import cyou.obliquerays.media.config.RadioProperties;
+import cyou.obliquerays.media.hls.HlsClient;
+import cyou.obliquerays.media.hls.LiveHlsSource;
+import cyou.obliquerays.media.hls.MirrorSelector;
+import cyou.obliquerays.media.jfr.EncoderMonitor;
+import cyou.obliquerays.media.schedule.RecordingSlot;
+import cyou.obliquerays.media.store.AudioFingerprint;
 
 /**
  * HLS（HTTP Live Streaming）セグメントファイル（.ts）を結合する処理<br>
@@ -41,30 +56,136 @@ public class NhkRecorder implements Callable<Path> {
     /** ロガー */
     private static final Logger LOG = System.getLogger(NhkRecorder.class.getName());
 
+    /** セグメントファイル中継時の1リクエストのタイムアウト */
+    private static final Duration RELAY_TIMEOUT = Duration.ofSeconds(10L);
+
+    /** セグメントファイル中継の終了時刻の余裕 */
+    private static final Duration RELAY_MARGIN = Duration.ofSeconds(30L);
+
+    /** 録音枠 */
+    private final RecordingSlot slot;
+
+    /** 録音開始日時を決める時計 */
+    private final Clock clock;
+
     /** エンコード後のMP3ファイル */
     private final Path mp3path;
 
 	/**
-	 * コンストラクタ
+	 * コンストラクタ<br>
+	 * 設定ファイルの録音番組を当日の録音枠で録音
 	 */
 	public NhkRecorder() {
-		this.mp3path = RadioProperties.getProperties().getMp3FilePath();
+		this(Clock.systemDefaultZone());
+	}
+
+	/**
+	 * コンストラクタ<br>
+	 * 設定ファイルの録音番組を時計の当日の録音枠で録音
+	 * @param _clock 録音日と録音開始日時を決める時計
+	 * @throws IllegalStateException 設定ファイルの録音番組なし
+	 */
+	private NhkRecorder(Clock _clock) {
+		this(RadioProperties.getProperties().getPrograms().stream().findFirst()
+				.orElseThrow(() -> new IllegalStateException("設定ファイルの録音番組なし"))
+				.slotOn(LocalDate.now(_clock)), _clock);
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param _slot 録音枠
+	 * @param _clock 録音開始日時を決める時計
+	 */
+	public NhkRecorder(RecordingSlot _slot, Clock _clock) {
+		this.slot = Objects.requireNonNull(_slot);
+		this.clock = Objects.requireNonNull(_clock);
+		this.mp3path = RadioProperties.getProperties().getMp3FilePath(_slot.getStart().toLocalDate(), _slot.getProgram().getFilePrefix());
+	}
+
+	/** @return エンコード後のMP3ファイル */
+	public Path getMp3Path() {
+		return this.mp3path;
+	}
+
+	/** @return 録音時間、録音開始時間より遅れた場合は録音終了時間まで */
+	private Duration getDuration() {
+		return this.slot.getDuration(LocalDateTime.now(this.clock));
 	}
 
 	/**
 	 * FFMPEGのパラメータ取得
+	 * @param _duration 録音時間
 	 * @return FFMPEGのパラメータ
 	 */
-	private List<String> getEncodingAttributes() {
-		LocalTime start = RadioProperties.getProperties().getStart();
-		LocalTime end = RadioProperties.getProperties().getEnd();
-		Duration duration = Duration.between(start, end);
-		
+	private List<String> getEncodingAttributes(Duration _duration) {
+		String input = this.isRelay() ? "pipe:0" : RadioProperties.getProperties().getRadio().toString();
+		return getEncodingAttributes(input, _duration, partPath(this.mp3path),
+				this.slot.getProgram().getTitle(), this.slot.getStart().toLocalDate(), this.isRelay(), RadioProperties.getProperties().isDedup());
+	}
+
+	/**
+	 * ミラーURIが複数ある場合はセグメントファイルを受信してFFMPEGへ中継<br>
+	 * ミラーURIが1つの場合はFFMPEGが直接受信
+	 * @return セグメントファイルを中継する場合はtrue
+	 */
+	private boolean isRelay() {
+		return RadioProperties.getProperties().getRadios().size() > 1;
+	}
+
+	/**
+	 * ミラーURIからセグメントファイルを受信してFFMPEGの標準入力へ中継
+	 * @param _ffmpeg FFMPEGプロセス
+	 * @param _monitor FFMPEGプロセスの監視
+	 * @param _until 受信終了時刻
+	 * @param _chapters 不連続点のチャプターの開始時間
+	 */
+	private void relay(Process _ffmpeg, EncoderMonitor _monitor, Instant _until, List<Duration> _chapters) {
+		HlsClient client = new HlsClient(1, RELAY_TIMEOUT);
+		LiveHlsSource source = new LiveHlsSource(client, new MirrorSelector(RadioProperties.getProperties().getRadios()));
+		try (OutputStream stdin = _ffmpeg.getOutputStream()) {
+			Duration[] elapsed = {Duration.ZERO};
+			source.stream((segment, data) -> {
+				_monitor.onSegment(segment.getUri().toString());
+				if (segment.isDiscontinuity())
+					_chapters.add(elapsed[0]);
+				stdin.write(data);
+				elapsed[0] = elapsed[0].plusMillis(Math.round(segment.getDuration() * 1000d));
+			}, _until);
+		} catch (IOException e) {
+			if (_ffmpeg.isAlive()) {
+				LOG.log(Level.ERROR, "セグメントファイルの中継に失敗", e);
+			} else {
+				LOG.log(Level.DEBUG, "FFMPEG終了により中継終了");
+			}
+		} catch (InterruptedException e) {
+			LOG.log(Level.DEBUG, "セグメントファイルの中継を中断");
+		}
+	}
+
+	/**
+	 * FFMPEGのパラメータ取得<br>
+	 * ライブ録音とオンデマンドの取得で共通のMP3エンコード設定、ラウドネス正規化とID3タグも同じ処理で出力<br>
+	 * 重複排除が有効な場合は音声の特徴量を計算するPCMを標準出力へ出力
+	 * @param _input FFMPEGの入力（URIまたはpipe:0）
+	 * @param _duration 録音時間、nullの場合は入力の終端まで
+	 * @param _output エンコード中のMP3ファイル
+	 * @param _title 番組名
+	 * @param _date 放送日
+	 * @param _chapters エンコード後にチャプターを書き込む場合はtrue、ID3タグにパディングを確保
+	 * @param _fingerprint 特徴量のPCMを標準出力へ出力する場合はtrue
+	 * @return FFMPEGのパラメータ
+	 */
+	static List<String> getEncodingAttributes(String _input, Duration _duration, Path _output, String _title, LocalDate _date, boolean _chapters, boolean _fingerprint) {
+		RadioProperties prop = RadioProperties.getProperties();
 		List<String> attrs = new ArrayList<>(0);
 		attrs.add("ffmpeg");
 		attrs.add("-i");
-		attrs.add(RadioProperties.getProperties().getRadio().toString());
+		attrs.add(_input);
 		attrs.add("-vn");
+		if (prop.isLoudnorm()) {
+			attrs.add("-af");
+			attrs.add("loudnorm=" + prop.getLoudnormFilter());
+		}
 		attrs.add("-write_xing");
 		attrs.add("0");
 		attrs.add("-ab");
@@ -77,47 +198,128 @@ public class NhkRecorder implements Callable<Path> {
 		attrs.add("libmp3lame");
 		attrs.add("-f");
 		attrs.add("mp3");
-		attrs.add("-t");
-		attrs.add(String.valueOf(duration.getSeconds()));
+		attrs.add("-id3v2_version");
+		attrs.add("3");
+		if (_chapters) {
+			attrs.add("-metadata_header_padding");
+			attrs.add(String.valueOf(Id3Chapters.PADDING));
+		}
+		attrs.add("-metadata");
+		attrs.add("title=" + _title);
+		attrs.add("-metadata");
+		attrs.add("album=" + _title);
+		attrs.add("-metadata");
+		attrs.add("artist=" + prop.getStationName());
+		attrs.add("-metadata");
+		attrs.add("date=" + _date);
+		if (Objects.nonNull(_duration)) {
+			attrs.add("-t");
+			attrs.add(String.valueOf(_duration.getSeconds()));
+		}
 		attrs.add("-y");
-		attrs.add(this.mp3path.toString());
+		attrs.add(_output.toString());
+		if (_fingerprint)
+			attrs.addAll(AudioFingerprint.getOutputAttributes(_duration));
 		LOG.log(Level.DEBUG, attrs.toString());
 	 	return attrs;
 	}
 
+	/**
+	 * エンコード中のMP3ファイル<br>
+	 * 上書きやハードリンクへの置き換えで別の録音ファイルを書き換えないように、完成後に録音ファイルへ名前を変更
+	 * @param _mp3path 録音ファイル
+	 * @return 録音ファイルと同じディレクトリの一時ファイル
+	 */
+	static Path partPath(Path _mp3path) {
+		return _mp3path.resolveSibling("." + _mp3path.getFileName() + ".part");
+	}
+
+	/**
+	 * エンコード中のMP3ファイルを録音ファイルへ名前変更し、音声の特徴量を保存
+	 * @param _part エンコード中のMP3ファイル
+	 * @param _mp3path 録音ファイル
+	 * @param _fingerprint 音声の特徴量の計算、無効な場合はnull
+	 * @throws IOException ファイル操作失敗
+	 * @throws InterruptedException 特徴量の計算中にスレッド割り込み
+	 */
+	static void complete(Path _part, Path _mp3path, CompletableFuture<AudioFingerprint> _fingerprint) throws IOException, InterruptedException {
+		Files.move(_part, _mp3path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if (Objects.isNull(_fingerprint))
+			return;
+		try {
+			_fingerprint.get().write(AudioFingerprint.sidecar(_mp3path));
+		} catch (ExecutionException e) {
+			LOG.log(Level.WARNING, "音声の特徴量の計算に失敗、重複排除時に録音ファイルから計算#" + _mp3path, e.getCause());
+		}
+	}
+
 	/**
 	 * NHKラジオをMP3へエンコード
 	 * @return エンコード結果のMP3ファイル
-	 * @throws IOException FFMPEG起動失敗
+	 * @throws IOException FFMPEG起動失敗、もしくは録音ファイルを出力せずにFFMPEGが異常終了
 	 * @throws InterruptedException FFMPEG実行中にスレッド割り込み
 	 * @throws ExecutionException FFMPEG実行失敗
 	 */
 	public Path record() throws IOException, InterruptedException, ExecutionException {
 
+		Duration duration = this.getDuration();
+		Path part = partPath(this.mp3path);
 		Process ffmpeg = null;
 		try {
-			ProcessBuilder ffmpegBuilder = new ProcessBuilder(this.getEncodingAttributes());
+			ProcessBuilder ffmpegBuilder = new ProcessBuilder(this.getEncodingAttributes(duration));
 			ffmpegBuilder.directory(Path.of(RadioProperties.getProperties().getBaseDir()).toAbsolutePath().normalize().toFile());
-			ffmpegBuilder.redirectErrorStream(true);
 			ffmpeg = ffmpegBuilder.start();
 		} catch (IOException e) {
 			LOG.log(Level.ERROR, "FFMPEGの起動に失敗", e);
 			throw e;
 		}
 
-		try (Stream<String> lines = new BufferedReader(new InputStreamReader(ffmpeg.getInputStream(), StandardCharsets.UTF_8)).lines()) {
-			lines.forEach(s -> LOG.log(Level.INFO, s));
+		CompletableFuture<AudioFingerprint> fingerprint = RadioProperties.getProperties().isDedup()
+				? AudioFingerprint.readAsync(ffmpeg.getInputStream()) : null;
+		Thread relay = null;
+		List<Duration> chapters = Collections.synchronizedList(new ArrayList<>(List.of(Duration.ZERO)));
+		try (EncoderMonitor monitor = new EncoderMonitor(this.mp3path, ffmpeg);
+				Stream<String> lines = new BufferedReader(new InputStreamReader(ffmpeg.getErrorStream(), StandardCharsets.UTF_8)).lines()) {
+			if (this.isRelay()) {
+				final Process encoder = ffmpeg;
+				Instant until = Instant.now().plus(duration).plus(RELAY_MARGIN);
+				relay = new Thread(() -> this.relay(encoder, monitor, until, chapters), "relay-" + this.mp3path.getFileName());
+				relay.setDaemon(true);
+				relay.start();
+			}
+			lines.forEach(s -> {
+				monitor.onOutput(s);
+				LOG.log(Level.INFO, s);
+			});
 			Future<Boolean> result = ffmpeg.onExit().thenApply(p -> p.exitValue() == 0);
 			if (result.get()) {
 				LOG.log(Level.INFO, "MP3エンコード終了 exitCode = " + ffmpeg.exitValue());
 			} else {
 				LOG.log(Level.ERROR, "MP3エンコード終了 exitCode = " + ffmpeg.exitValue());
 			}
+			long size = Files.exists(part) ? Files.size(part) : 0L;
+			monitor.finish(ffmpeg.exitValue(), size);
+			if (!result.get() && size == 0L)
+				throw new IOException("MP3エンコード失敗、録音ファイルなし exitCode = " + ffmpeg.exitValue() + "#" + this.mp3path);
+			if (this.isRelay()) {
+				synchronized (chapters) {
+					Id3Chapters.write(part, this.slot.getProgram().getTitle(), chapters, duration);
+				}
+			}
+			complete(part, this.mp3path, fingerprint);
 		} catch (InterruptedException | ExecutionException e) {
 			LOG.log(Level.ERROR, "MP3エンコードを中断", e);
 	    	throw e;
 	    } finally {
 	    	ffmpeg.destroyForcibly();
+	    	if (Objects.nonNull(relay))
+	    		relay.interrupt();
+	    	if (Files.exists(part) && Files.size(part) > 0L) {
+	    		Files.move(part, this.mp3path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	    		LOG.log(Level.WARNING, "中断した録音ファイルを保存#" + this.mp3path);
+	    	} else {
+	    		Files.deleteIfExists(part);
+	    	}
 	    }
 
 		return this.mp3path;
@@ -25,16 +25,23 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Clock;
 import java.time.DateTimeException;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 
+import cyou.obliquerays.media.schedule.RecordingProgram;
+
 /**
  * パラメータ一覧
  */
@@ -52,12 +59,29 @@ public final class RadioProperties extends Properties {
 	private final Set<DayOfWeek> dayOfWeeks = EnumSet.noneOf(DayOfWeek.class);
 	private final LocalTime start;
 	private final LocalTime end;
-	private final URI radio;
+	private final List<URI> radios;
 	private final String mp3FilePrefix;
 	private final String mp3FileName;
 	private final String mp3FileSuffix;
+	private final String programTitle;
+	private final String stationName;
+	private final boolean loudnorm;
+	private final String loudnormFilter;
 	private final long startAdjustmentSeconds;
 	private final long endAdjustmentSeconds;
+	private final int backfillConcurrency;
+	private final int backfillRetry;
+	private final boolean dedup;
+	private final long ringMinutes;
+	private final long ringCapacityMegabytes;
+	private final boolean s3;
+	private final int s3PartSizeMegabytes;
+	private final int s3Concurrency;
+	private final long s3BandwidthKilobytes;
+	private final boolean s3DeleteLocal;
+	private final URI guideUri;
+	private final Map<String, String> guideTitles = new LinkedHashMap<>();
+	private final long guideRefreshMinutes;
 
 	/** コンストラクタ */
 	private RadioProperties() {
@@ -86,14 +110,46 @@ public final class RadioProperties extends Properties {
 			this.dayOfWeeks.add(DayOfWeek.SATURDAY);
     	this.start = LocalTime.parse(Objects.requireNonNull(this.getProperty("start.time")));
     	this.end = LocalTime.parse(Objects.requireNonNull(this.getProperty("end.time")));
-    	this.radio = URI.create(Objects.requireNonNull(this.getProperty("radio.uri")));
+    	this.radios = Arrays.stream(Objects.requireNonNull(this.getProperty("radio.uri")).split(","))
+    			.map(String::strip)
+    			.filter(uri -> !uri.isEmpty())
+    			.map(URI::create)
+    			.toList();
+    	if (this.radios.isEmpty())
+    		throw new IllegalArgumentException("radio.uriが未設定");
 
     	this.mp3FilePrefix = Objects.requireNonNull(this.getProperty("mp3.file.prefix"));
     	this.mp3FileName = Objects.requireNonNull(this.getProperty("mp3.file.name"));
     	this.mp3FileSuffix = Objects.requireNonNull(this.getProperty("mp3.file.suffix"));
+    	this.programTitle = this.getProperty("program.title", this.mp3FilePrefix);
+    	this.stationName = this.getProperty("station.name", "NHK");
+    	this.loudnorm = Boolean.parseBoolean(this.getProperty("loudnorm", "false"));
+    	this.loudnormFilter = this.getProperty("loudnorm.filter", "I=-16:TP=-1.5:LRA=11");
 
     	this.startAdjustmentSeconds = Long.parseLong(Objects.requireNonNull(this.getProperty("start.adjustment.seconds")));
     	this.endAdjustmentSeconds = Long.parseLong(Objects.requireNonNull(this.getProperty("end.adjustment.seconds")));
+
+    	this.backfillConcurrency = Integer.parseInt(this.getProperty("backfill.concurrency", "4"));
+    	this.backfillRetry = Integer.parseInt(this.getProperty("backfill.retry", "3"));
+    	this.dedup = Boolean.parseBoolean(this.getProperty("dedup", "false"));
+    	this.ringMinutes = Long.parseLong(this.getProperty("ring.minutes", "0"));
+    	this.ringCapacityMegabytes = Long.parseLong(this.getProperty("ring.capacity.mb", "32"));
+
+    	this.s3 = Boolean.parseBoolean(this.getProperty("s3", "false"));
+    	this.s3PartSizeMegabytes = Integer.parseInt(this.getProperty("s3.part.size.mb", "8"));
+    	this.s3Concurrency = Integer.parseInt(this.getProperty("s3.concurrency", "2"));
+    	this.s3BandwidthKilobytes = Long.parseLong(this.getProperty("s3.bandwidth.kb", "0"));
+    	this.s3DeleteLocal = Boolean.parseBoolean(this.getProperty("s3.delete.local", "false"));
+
+    	String guide = this.getProperty("guide.uri", "").strip();
+    	this.guideUri = guide.isEmpty() ? null : URI.create(guide);
+    	for (String rule : this.getProperty("guide.titles", "").split(",")) {
+    		String[] pair = rule.split("=", 2);
+    		String title = pair[0].strip();
+    		if (!title.isEmpty())
+    			this.guideTitles.put(title, pair.length > 1 && !pair[1].isBlank() ? pair[1].strip() : title);
+    	}
+    	this.guideRefreshMinutes = Long.parseLong(this.getProperty("guide.refresh.minutes", "60"));
 	}
 
 	/** @return プログラム起動モード */
@@ -101,9 +157,14 @@ public final class RadioProperties extends Properties {
 		return this.process;
 	}
 
-	/** @return RADIOストリーミングのURI */
+	/** @return RADIOストリーミングのURI、ミラーが複数ある場合は先頭のURI */
 	public URI getRadio() {
-		return this.radio;
+		return this.radios.get(0);
+	}
+
+	/** @return RADIOストリーミングのミラーURI一覧 */
+	public List<URI> getRadios() {
+		return this.radios;
 	}
 
 	/** @return 録音ファイルディレクトリ */
@@ -138,6 +199,26 @@ public final class RadioProperties extends Properties {
 		return this.mp3FileSuffix;
 	}
 
+	/** @return 番組名、録音ファイルのタイトルとアルバム */
+	public String getProgramTitle() {
+		return this.programTitle;
+	}
+
+	/** @return 放送局名、録音ファイルのアーティスト */
+	public String getStationName() {
+		return this.stationName;
+	}
+
+	/** @return ラウドネスを正規化する場合はtrue */
+	public boolean isLoudnorm() {
+		return this.loudnorm;
+	}
+
+	/** @return FFMPEGのloudnormフィルターの目標値 */
+	public String getLoudnormFilter() {
+		return this.loudnormFilter;
+	}
+
 	/** @return 録音開始時間 */
 	public LocalTime getStart() {
 		return this.start.plusSeconds(this.getStartAdjustmentSeconds());
@@ -153,6 +234,20 @@ public final class RadioProperties extends Properties {
 		return this.dayOfWeeks;
 	}
 
+	/**
+	 * 録音番組、終了時間が開始時間以前の場合は日付をまたぐ<br>
+	 * 録音時間が{@link RecordingProgram#MAX_DURATION}を超える場合（従来の初期値「23:55」から「23:00」など）は録音しない
+	 * @return 録音番組
+	 */
+	public List<RecordingProgram> getPrograms() {
+		try {
+			return List.of(new RecordingProgram(this.getProgramTitle(), this.getMp3FilePrefix(), this.getDayOfWeeks(), this.getStart(), this.getEnd()));
+		} catch (IllegalArgumentException e) {
+			LOG.log(Level.WARNING, "設定ファイルの録音番組を除外#" + e.getMessage());
+			return List.of();
+		}
+	}
+
 	/** @return 録音を開始時間の調整 */
 	public long getStartAdjustmentSeconds() {
 		return this.startAdjustmentSeconds;
@@ -163,6 +258,101 @@ public final class RadioProperties extends Properties {
 		return this.endAdjustmentSeconds;
 	}
 
+	/** @return オンデマンド取得時のセグメントファイルの同時ダウンロード数 */
+	public int getBackfillConcurrency() {
+		return this.backfillConcurrency;
+	}
+
+	/** @return オンデマンド取得時のセグメントファイルの再試行回数 */
+	public int getBackfillRetry() {
+		return this.backfillRetry;
+	}
+
+	/** @return 録音ファイルの重複排除 */
+	public boolean isDedup() {
+		return this.dedup;
+	}
+
+	/** @return リングバッファの保持時間（分）、0の場合はリングバッファ無効 */
+	public long getRingMinutes() {
+		return this.ringMinutes;
+	}
+
+	/** @return リングバッファの容量（MB） */
+	public long getRingCapacityMegabytes() {
+		return this.ringCapacityMegabytes;
+	}
+
+	/** @return 録音ファイルをS3互換オブジェクトストレージへアップロード */
+	public boolean isS3() {
+		return this.s3;
+	}
+
+	/** @return S3互換オブジェクトストレージのエンドポイント */
+	public URI getS3Endpoint() {
+		return URI.create(Objects.requireNonNull(this.getProperty("s3.endpoint")));
+	}
+
+	/** @return S3互換オブジェクトストレージのリージョン */
+	public String getS3Region() {
+		return this.getProperty("s3.region", "us-east-1");
+	}
+
+	/** @return S3互換オブジェクトストレージのバケット */
+	public String getS3Bucket() {
+		return Objects.requireNonNull(this.getProperty("s3.bucket"));
+	}
+
+	/** @return オブジェクトキーの接頭辞 */
+	public String getS3Prefix() {
+		return this.getProperty("s3.prefix", "");
+	}
+
+	/** @return アクセスキー、未設定の場合は環境変数AWS_ACCESS_KEY_ID */
+	public String getS3AccessKey() {
+		return Objects.requireNonNull(this.getProperty("s3.access.key", System.getenv("AWS_ACCESS_KEY_ID")));
+	}
+
+	/** @return シークレットキー、未設定の場合は環境変数AWS_SECRET_ACCESS_KEY */
+	public String getS3SecretKey() {
+		return Objects.requireNonNull(this.getProperty("s3.secret.key", System.getenv("AWS_SECRET_ACCESS_KEY")));
+	}
+
+	/** @return マルチパートアップロードのパートのサイズ（MB） */
+	public int getS3PartSizeMegabytes() {
+		return this.s3PartSizeMegabytes;
+	}
+
+	/** @return パートの同時アップロード数 */
+	public int getS3Concurrency() {
+		return this.s3Concurrency;
+	}
+
+	/** @return 送信帯域の上限（KB/秒）、0の場合は無制限 */
+	public long getS3BandwidthKilobytes() {
+		return this.s3BandwidthKilobytes;
+	}
+
+	/** @return アップロード完了後に録音ファイルを削除 */
+	public boolean isS3DeleteLocal() {
+		return this.s3DeleteLocal;
+	}
+
+	/** @return 番組表（EPG）JSONのURI、無効な場合はnull */
+	public URI getGuideUri() {
+		return this.guideUri;
+	}
+
+	/** @return 番組表から録音する番組名と録音ファイル名の[prefix] */
+	public Map<String, String> getGuideTitles() {
+		return this.guideTitles;
+	}
+
+	/** @return 番組表の更新間隔（分） */
+	public long getGuideRefreshMinutes() {
+		return this.guideRefreshMinutes;
+	}
+
 	/**
 	 * ファイル読み取りストリームへのアクセス
 	 * @param _fileName ファイル名
@@ -196,18 +386,46 @@ public final class RadioProperties extends Properties {
 	 * @return 録音ファイル名[prefix]-[name].[suffix]の絶対パス
 	 */
 	public Path getMp3FilePath () {
+		return this.getMp3FilePath(Clock.systemDefaultZone());
+	}
+
+	/**
+	 * 時計の日付の録音ファイル名[prefix]-[name].[suffix]の絶対パスを取得
+	 * @param _clock 放送日を決める時計
+	 * @return 録音ファイル名[prefix]-[name].[suffix]の絶対パス
+	 */
+	public Path getMp3FilePath (Clock _clock) {
+		return this.getMp3FilePath(LocalDate.now(_clock));
+	}
+
+	/**
+	 * 放送日の録音ファイル名[prefix]-[name].[suffix]の絶対パスを取得
+	 * @param _date 放送日
+	 * @return 録音ファイル名[prefix]-[name].[suffix]の絶対パス
+	 */
+	public Path getMp3FilePath (LocalDate _date) {
+		return this.getMp3FilePath(_date, this.getMp3FilePrefix());
+	}
+
+	/**
+	 * 放送日と番組の録音ファイル名[prefix]-[name].[suffix]の絶対パスを取得
+	 * @param _date 放送日
+	 * @param _prefix 録音ファイル名の[prefix]
+	 * @return 録音ファイル名[prefix]-[name].[suffix]の絶対パス
+	 */
+	public Path getMp3FilePath (LocalDate _date, String _prefix) {
 		String baseDir = this.getBaseDir();
-		String mp3FilePrefix = this.getMp3FilePrefix();
+		String mp3FilePrefix = _prefix;
     	try {
     		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(mp3FilePrefix);
-    		mp3FilePrefix = LocalDate.now().format(formatter);
+    		mp3FilePrefix = _date.format(formatter);
     	} catch (IllegalArgumentException | DateTimeException e) {
     		// ignore
     	}
     	String mp3FileName = this.getMp3FileName();
     	try {
     		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(mp3FileName);
-    		mp3FileName = LocalDate.now().format(formatter);
+    		mp3FileName = _date.format(formatter);
     	} catch (IllegalArgumentException | DateTimeException e) {
     		// ignore
     	}
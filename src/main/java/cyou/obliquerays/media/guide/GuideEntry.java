@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.guide;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * 番組表の番組
+ */
+public final class GuideEntry {
+
+	/** 番組名 */
+	private final String title;
+
+	/** 放送開始日時 */
+	private final LocalDateTime start;
+
+	/** 放送終了日時 */
+	private final LocalDateTime end;
+
+	/**
+	 * コンストラクタ
+	 * @param _title 番組名
+	 * @param _start 放送開始日時
+	 * @param _end 放送終了日時
+	 */
+	public GuideEntry(String _title, LocalDateTime _start, LocalDateTime _end) {
+		this.title = Objects.requireNonNull(_title);
+		this.start = Objects.requireNonNull(_start);
+		this.end = Objects.requireNonNull(_end);
+		if (!_end.isAfter(_start))
+			throw new IllegalArgumentException("放送終了日時が放送開始日時以前#" + _title + " " + _start + " - " + _end);
+	}
+
+	/** @return 番組名 */
+	public String getTitle() {
+		return this.title;
+	}
+
+	/** @return 放送開始日時 */
+	public LocalDateTime getStart() {
+		return this.start;
+	}
+
+	/** @return 放送終了日時 */
+	public LocalDateTime getEnd() {
+		return this.end;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("GuideEntry[").append(this.title)
+				.append(", ").append(this.start)
+				.append(" - ").append(this.end).append("]").toString();
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.guide;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 番組表の定期更新<br>
+ * HTTPはETag（If-None-Match）、ファイルは更新日時で変更がない場合は解析を省略し、変更がある場合は新しい索引へ差し替える
+ */
+public class GuideRefresher implements Runnable {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(GuideRefresher.class.getName());
+
+    /** 1リクエストのタイムアウト */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30L);
+
+    /** 放送終了した番組を保持する期間 */
+    private static final Duration RETENTION = Duration.ofDays(1L);
+
+	/** 番組表のURI（http、https、file） */
+	private final URI uri;
+
+	/** 放送日時のタイムゾーンと現在日時を決める時計 */
+	private final Clock clock;
+
+	/** 番組表の更新通知 */
+	private final Consumer<ProgramGuide> listener;
+
+	/** 現在の番組表 */
+	private final AtomicReference<ProgramGuide> guide = new AtomicReference<>(ProgramGuide.EMPTY);
+
+	/** HTTPクライアント、ファイルの場合はnull */
+	private final HttpClient client;
+
+	/** 前回取得した番組表のETag、もしくはファイルの更新日時 */
+	private String etag;
+
+	/**
+	 * コンストラクタ
+	 * @param _uri 番組表のURI（http、https、file）
+	 * @param _clock 放送日時のタイムゾーンと現在日時を決める時計
+	 * @param _listener 番組表の更新通知
+	 */
+	public GuideRefresher(URI _uri, Clock _clock, Consumer<ProgramGuide> _listener) {
+		this.uri = Objects.requireNonNull(_uri);
+		this.clock = Objects.requireNonNull(_clock);
+		this.listener = Objects.requireNonNull(_listener);
+		this.client = "file".equals(_uri.getScheme()) ? null : HttpClient.newBuilder()
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(TIMEOUT)
+				.build();
+	}
+
+	/** @return 現在の番組表 */
+	public ProgramGuide getGuide() {
+		return this.guide.get();
+	}
+
+	/**
+	 * 番組表の更新<br>
+	 * 失敗した場合は現在の番組表を維持して次回の更新を待つ
+	 */
+	@Override
+	public void run() {
+		try {
+			this.refresh();
+		} catch (IOException | RuntimeException e) {
+			LOG.log(Level.ERROR, "番組表の更新に失敗#" + this.uri, e);
+		} catch (InterruptedException e) {
+			LOG.log(Level.DEBUG, "番組表の更新を中断#" + this.uri);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 番組表の更新
+	 * @return 番組表を差し替えた場合はtrue
+	 * @throws IOException 番組表の取得失敗
+	 * @throws InterruptedException 取得中のスレッド割り込み
+	 */
+	public boolean refresh() throws IOException, InterruptedException {
+		String json = this.fetch();
+		if (Objects.isNull(json)) {
+			LOG.log(Level.DEBUG, "番組表の変更なし#" + this.uri);
+			return false;
+		}
+		List<GuideEntry> entries = ProgramGuide.parse(json, this.clock.getZone());
+		ProgramGuide next = this.guide.get().merge(entries, LocalDateTime.now(this.clock).minus(RETENTION));
+		this.guide.set(next);
+		LOG.log(Level.INFO, "番組表を更新 取得 = " + entries.size() + " 索引 = " + next.size() + "#" + this.uri);
+		this.listener.accept(next);
+		return true;
+	}
+
+	/**
+	 * 番組表JSONの取得
+	 * @return 番組表JSON、前回から変更がない場合はnull
+	 * @throws IOException 取得失敗
+	 * @throws InterruptedException 取得中のスレッド割り込み
+	 */
+	private String fetch() throws IOException, InterruptedException {
+		if (Objects.isNull(this.client)) {
+			Path file = Path.of(this.uri);
+			String modified = Files.getLastModifiedTime(file).toString() + "/" + Files.size(file);
+			if (modified.equals(this.etag))
+				return null;
+			String json = Files.readString(file, StandardCharsets.UTF_8);
+			this.etag = modified;
+			return json;
+		}
+
+		HttpRequest.Builder builder = HttpRequest.newBuilder(this.uri).timeout(TIMEOUT)
+				.header("Accept", "application/json").GET();
+		if (Objects.nonNull(this.etag))
+			builder.header("If-None-Match", this.etag);
+		HttpResponse<String> response = this.client.send(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+		if (response.statusCode() == 304)
+			return null;
+		if (response.statusCode() / 100 != 2)
+			throw new IOException("HTTPステータス " + response.statusCode() + "#" + this.uri);
+		this.etag = response.headers().firstValue("ETag").orElse(null);
+		return response.body();
+	}
+}
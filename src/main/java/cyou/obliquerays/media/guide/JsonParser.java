@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.guide;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 番組表を読み取るための最小限のJSONパーサー<br>
+ * オブジェクトはMap、配列はList、数値はBigDecimal、真偽値はBoolean、nullはnullに変換
+ */
+final class JsonParser {
+
+	/** JSON文字列 */
+	private final String json;
+
+	/** 読み取り位置 */
+	private int pos;
+
+	/**
+	 * コンストラクタ
+	 * @param _json JSON文字列
+	 */
+	private JsonParser(String _json) {
+		this.json = _json;
+	}
+
+	/**
+	 * JSONの解析
+	 * @param _json JSON文字列
+	 * @return 解析結果
+	 * @throws IllegalArgumentException JSONの形式が不正
+	 */
+	static Object parse(String _json) {
+		JsonParser parser = new JsonParser(_json);
+		Object value = parser.value();
+		parser.skip();
+		if (parser.pos != parser.json.length())
+			throw parser.error("JSONの終端以降に文字列");
+		return value;
+	}
+
+	/** @return 現在位置の値 */
+	private Object value() {
+		this.skip();
+		if (this.pos >= this.json.length())
+			throw this.error("JSONの途中で終端");
+		char c = this.json.charAt(this.pos);
+		return switch (c) {
+		case '{' -> this.object();
+		case '[' -> this.array();
+		case '"' -> this.string();
+		case 't' -> this.literal("true", Boolean.TRUE);
+		case 'f' -> this.literal("false", Boolean.FALSE);
+		case 'n' -> this.literal("null", null);
+		default -> this.number();
+		};
+	}
+
+	/** @return 現在位置のオブジェクト */
+	private Map<String, Object> object() {
+		Map<String, Object> object = new LinkedHashMap<>();
+		this.expect('{');
+		this.skip();
+		if (this.peek('}')) {
+			this.pos++;
+			return object;
+		}
+		do {
+			this.skip();
+			String key = this.string();
+			this.skip();
+			this.expect(':');
+			object.put(key, this.value());
+			this.skip();
+		} while (this.next(','));
+		this.expect('}');
+		return object;
+	}
+
+	/** @return 現在位置の配列 */
+	private List<Object> array() {
+		List<Object> array = new ArrayList<>();
+		this.expect('[');
+		this.skip();
+		if (this.peek(']')) {
+			this.pos++;
+			return array;
+		}
+		do {
+			array.add(this.value());
+			this.skip();
+		} while (this.next(','));
+		this.expect(']');
+		return array;
+	}
+
+	/** @return 現在位置の文字列 */
+	private String string() {
+		this.expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (this.pos < this.json.length()) {
+			char c = this.json.charAt(this.pos++);
+			if (c == '"')
+				return sb.toString();
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			if (this.pos >= this.json.length())
+				break;
+			char escape = this.json.charAt(this.pos++);
+			switch (escape) {
+			case 'b' -> sb.append('\b');
+			case 'f' -> sb.append('\f');
+			case 'n' -> sb.append('\n');
+			case 'r' -> sb.append('\r');
+			case 't' -> sb.append('\t');
+			case 'u' -> {
+				if (this.pos + 4 > this.json.length())
+					throw this.error("\\uエスケープが不正");
+				try {
+					sb.append((char) Integer.parseInt(this.json.substring(this.pos, this.pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw this.error("\\uエスケープが不正");
+				}
+				this.pos += 4;
+			}
+			default -> sb.append(escape);
+			}
+		}
+		throw this.error("文字列の途中で終端");
+	}
+
+	/** @return 現在位置の数値 */
+	private BigDecimal number() {
+		int start = this.pos;
+		while (this.pos < this.json.length() && "+-0123456789.eE".indexOf(this.json.charAt(this.pos)) >= 0)
+			this.pos++;
+		try {
+			return new BigDecimal(this.json.substring(start, this.pos));
+		} catch (NumberFormatException e) {
+			this.pos = start;
+			throw this.error("不正な値");
+		}
+	}
+
+	/**
+	 * 現在位置のリテラル
+	 * @param _literal リテラル
+	 * @param _value リテラルの値
+	 * @return リテラルの値
+	 */
+	private Object literal(String _literal, Object _value) {
+		if (!this.json.startsWith(_literal, this.pos))
+			throw this.error("不正な値");
+		this.pos += _literal.length();
+		return _value;
+	}
+
+	/** 空白の読み飛ばし */
+	private void skip() {
+		while (this.pos < this.json.length() && Character.isWhitespace(this.json.charAt(this.pos)))
+			this.pos++;
+	}
+
+	/**
+	 * 現在位置の文字の判定
+	 * @param _c 文字
+	 * @return 一致する場合はtrue
+	 */
+	private boolean peek(char _c) {
+		return this.pos < this.json.length() && this.json.charAt(this.pos) == _c;
+	}
+
+	/**
+	 * 現在位置の文字が一致する場合は読み進める
+	 * @param _c 文字
+	 * @return 一致する場合はtrue
+	 */
+	private boolean next(char _c) {
+		if (!this.peek(_c))
+			return false;
+		this.pos++;
+		return true;
+	}
+
+	/**
+	 * 現在位置の文字を読み進める
+	 * @param _c 期待する文字
+	 */
+	private void expect(char _c) {
+		if (!this.next(_c))
+			throw this.error("「" + _c + "」がない");
+	}
+
+	/**
+	 * 解析エラー
+	 * @param _message エラー内容
+	 * @return 例外
+	 */
+	private IllegalArgumentException error(String _message) {
+		return new IllegalArgumentException(_message + " 位置=" + this.pos);
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.guide;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import cyou.obliquerays.media.schedule.RecordingProgram;
+import cyou.obliquerays.media.schedule.RecordingSlot;
+
+/**
+ * 番組表の索引<br>
+ * 番組名と放送開始日時で索引した不変の番組表、更新時は新しい索引を作成して差し替える
+ */
+public final class ProgramGuide {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(ProgramGuide.class.getName());
+
+	/** 録音ファイル名の[prefix]に付加する放送開始時刻 */
+	private static final DateTimeFormatter START_FORMATTER = DateTimeFormatter.ofPattern("HHmm");
+
+	/** 空の番組表 */
+	public static final ProgramGuide EMPTY = new ProgramGuide(List.of());
+
+	/** 放送開始日時と番組 */
+	private final NavigableMap<LocalDateTime, List<GuideEntry>> byTime = new TreeMap<>();
+
+	/** 番組名と放送開始日時順の番組 */
+	private final Map<String, List<GuideEntry>> byTitle = new HashMap<>();
+
+	/** 番組数 */
+	private final int size;
+
+	/**
+	 * コンストラクタ<br>
+	 * 番組名と放送開始日時が同じ番組は後の番組を使用
+	 * @param _entries 番組
+	 */
+	public ProgramGuide(Collection<GuideEntry> _entries) {
+		Map<String, GuideEntry> unique = new LinkedHashMap<>();
+		for (GuideEntry entry : _entries)
+			unique.put(entry.getTitle() + "@" + entry.getStart(), entry);
+		for (GuideEntry entry : unique.values()) {
+			this.byTime.computeIfAbsent(entry.getStart(), k -> new ArrayList<>()).add(entry);
+			this.byTitle.computeIfAbsent(entry.getTitle(), k -> new ArrayList<>()).add(entry);
+		}
+		this.byTitle.values().forEach(list -> list.sort(Comparator.comparing(GuideEntry::getStart)));
+		this.size = unique.size();
+	}
+
+	/**
+	 * 番組表JSONの解析<br>
+	 * 「title」「start_time」「end_time」（ISO-8601のオフセット付き日時）を持つオブジェクトを番組として読み取り
+	 * @param _json 番組表JSON
+	 * @param _zone 放送日時のタイムゾーン
+	 * @return 番組
+	 * @throws IllegalArgumentException JSONの形式が不正
+	 */
+	public static List<GuideEntry> parse(String _json, ZoneId _zone) {
+		List<GuideEntry> entries = new ArrayList<>();
+		collect(JsonParser.parse(_json), _zone, entries);
+		return entries;
+	}
+
+	/**
+	 * JSONの値から番組を収集
+	 * @param _node JSONの値
+	 * @param _zone 放送日時のタイムゾーン
+	 * @param _entries 収集した番組
+	 */
+	private static void collect(Object _node, ZoneId _zone, List<GuideEntry> _entries) {
+		if (_node instanceof Map<?, ?> object) {
+			if (object.get("title") instanceof String title
+					&& object.get("start_time") instanceof String start
+					&& object.get("end_time") instanceof String end) {
+				try {
+					_entries.add(new GuideEntry(title.strip(),
+							OffsetDateTime.parse(start).atZoneSameInstant(_zone).toLocalDateTime(),
+							OffsetDateTime.parse(end).atZoneSameInstant(_zone).toLocalDateTime()));
+				} catch (DateTimeException | IllegalArgumentException e) {
+					LOG.log(Level.WARNING, "番組の読み取りに失敗#" + object, e);
+				}
+				return;
+			}
+			object.values().forEach(value -> collect(value, _zone, _entries));
+		} else if (_node instanceof List<?> array) {
+			array.forEach(value -> collect(value, _zone, _entries));
+		}
+	}
+
+	/**
+	 * 番組の追加<br>
+	 * 追加する番組の放送期間と重なる番組は置き換え、期限より前に放送終了した番組は削除
+	 * @param _entries 追加する番組
+	 * @param _expire 削除する番組の放送終了日時の期限
+	 * @return 新しい番組表
+	 */
+	public ProgramGuide merge(Collection<GuideEntry> _entries, LocalDateTime _expire) {
+		LocalDateTime from = _entries.stream().map(GuideEntry::getStart).min(Comparator.naturalOrder()).orElse(LocalDateTime.MAX);
+		LocalDateTime to = _entries.stream().map(GuideEntry::getEnd).max(Comparator.naturalOrder()).orElse(LocalDateTime.MIN);
+		List<GuideEntry> merged = new ArrayList<>(this.size + _entries.size());
+		for (List<GuideEntry> list : this.byTime.values()) {
+			for (GuideEntry entry : list) {
+				if (entry.getEnd().isAfter(_expire) && (!entry.getEnd().isAfter(from) || !entry.getStart().isBefore(to)))
+					merged.add(entry);
+			}
+		}
+		merged.addAll(_entries);
+		return new ProgramGuide(merged);
+	}
+
+	/** @return 番組数 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * 番組名で検索
+	 * @param _title 番組名
+	 * @return 放送開始日時順の番組
+	 */
+	public List<GuideEntry> find(String _title) {
+		return List.copyOf(this.byTitle.getOrDefault(_title, List.of()));
+	}
+
+	/**
+	 * 放送開始日時で検索
+	 * @param _from 放送開始日時の下限（含む）
+	 * @param _to 放送開始日時の上限（含まない）
+	 * @return 放送開始日時順の番組
+	 */
+	public List<GuideEntry> between(LocalDateTime _from, LocalDateTime _to) {
+		return this.byTime.subMap(_from, true, _to, false).values().stream().flatMap(List::stream).toList();
+	}
+
+	/**
+	 * 録音する番組名の全ての放送回を録音枠に変換<br>
+	 * 同じ日に複数回放送する番組の録音ファイルが重ならないよう、録音ファイル名の[prefix]には放送開始時刻（HHmm）を付加<br>
+	 * 録音枠にできない番組（録音時間が長すぎるなど）は除外
+	 * @param _rules 番組名と録音ファイル名の[prefix]
+	 * @param _now 現在日時、放送終了した番組は除外
+	 * @param _startAdjustment 録音開始時間の調整
+	 * @param _endAdjustment 録音終了時間の調整
+	 * @return 録音枠
+	 */
+	public List<RecordingSlot> resolve(Map<String, String> _rules, LocalDateTime _now, Duration _startAdjustment, Duration _endAdjustment) {
+		List<RecordingSlot> slots = new ArrayList<>();
+		for (Map.Entry<String, String> rule : _rules.entrySet()) {
+			for (GuideEntry entry : this.byTitle.getOrDefault(rule.getKey(), List.of())) {
+				LocalDateTime start = entry.getStart().plus(_startAdjustment);
+				LocalDateTime end = entry.getEnd().plus(_endAdjustment);
+				if (!end.isAfter(_now) || !end.isAfter(start))
+					continue;
+				try {
+					RecordingProgram program = new RecordingProgram(entry.getTitle(),
+							rule.getValue() + "-" + entry.getStart().format(START_FORMATTER),
+							EnumSet.of(start.getDayOfWeek()), start.toLocalTime(), end.toLocalTime());
+					slots.add(new RecordingSlot(program, start, end));
+				} catch (IllegalArgumentException e) {
+					LOG.log(Level.WARNING, "番組表の番組を録音枠に変換できないため除外#" + entry, e);
+				}
+			}
+		}
+		return slots;
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * 番組表（EPG）から録音予定を作成するパッケージ
+ */
+package cyou.obliquerays.media.guide;
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HLSのプレイリストとセグメントファイルの取得<br>
+ * 通信エラーとサーバーエラーは指数バックオフで再試行
+ */
+public class HlsClient {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(HlsClient.class.getName());
+
+    /** 再試行の初回待機時間（ミリ秒） */
+    private static final long BACKOFF_MILLIS = 500L;
+
+    /** HTTPクライアント */
+	private final HttpClient client;
+
+	/** 再試行回数 */
+	private final int retry;
+
+	/** 1リクエストのタイムアウト */
+	private final Duration timeout;
+
+	/**
+	 * コンストラクタ
+	 * @param _retry 再試行回数
+	 * @param _timeout 1リクエストのタイムアウト
+	 */
+	public HlsClient(int _retry, Duration _timeout) {
+		this.retry = Math.max(0, _retry);
+		this.timeout = Objects.requireNonNull(_timeout);
+		this.client = HttpClient.newBuilder()
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(_timeout)
+				.build();
+	}
+
+	/**
+	 * メディアプレイリストの取得<br>
+	 * マスタープレイリストの場合は先頭のバリアントを取得
+	 * @param _uri プレイリストのURI
+	 * @return メディアプレイリスト
+	 * @throws IOException 取得失敗、もしくはバリアントの無いマスタープレイリスト
+	 * @throws InterruptedException 取得中のスレッド割り込み
+	 */
+	public HlsPlaylist getPlaylist(URI _uri) throws IOException, InterruptedException {
+		HlsPlaylist playlist = HlsPlaylist.parse(_uri, this.send(_uri, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)));
+		if (playlist.isMaster()) {
+			if (playlist.getVariants().isEmpty())
+				throw new IOException("マスタープレイリストにバリアントなし#" + _uri);
+			URI variant = playlist.getVariants().get(0);
+			LOG.log(Level.DEBUG, "マスタープレイリストのバリアント#" + variant);
+			playlist = HlsPlaylist.parse(variant, this.send(variant, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)));
+		}
+		return playlist;
+	}
+
+	/**
+	 * セグメントファイルの取得
+	 * @param _segment セグメント
+	 * @return セグメントファイルの内容
+	 * @throws IOException 取得失敗
+	 * @throws InterruptedException 取得中のスレッド割り込み
+	 */
+	public byte[] getSegment(HlsSegment _segment) throws IOException, InterruptedException {
+		return this.send(_segment.getUri(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	/**
+	 * GETリクエストの送信と再試行
+	 * @param <T> レスポンスボディの型
+	 * @param _uri リクエスト先
+	 * @param _handler レスポンスボディの変換
+	 * @return レスポンスボディ
+	 * @throws IOException 再試行回数を超えて失敗、もしくはクライアントエラー
+	 * @throws InterruptedException 取得中のスレッド割り込み
+	 */
+	private <T> T send(URI _uri, BodyHandler<T> _handler) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(_uri).timeout(this.timeout).GET().build();
+		IOException cause = null;
+		for (int attempt = 0; attempt <= this.retry; attempt++) {
+			if (attempt > 0) {
+				long backoff = BACKOFF_MILLIS << (attempt - 1);
+				LOG.log(Level.WARNING, "再試行 " + attempt + "/" + this.retry + " " + backoff + "ms後#" + _uri);
+				TimeUnit.MILLISECONDS.sleep(backoff);
+			}
+			HttpResponse<T> response;
+			try {
+				response = this.client.send(request, _handler);
+			} catch (IOException e) {
+				cause = e;
+				continue;
+			}
+			int status = response.statusCode();
+			if (status / 100 == 2)
+				return response.body();
+			cause = new IOException("HTTPステータス " + status + "#" + _uri);
+			if (status != 429 && status / 100 != 5)
+				break;
+		}
+		LOG.log(Level.ERROR, "取得失敗#" + _uri, cause);
+		throw cause;
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * HLSのプレイリスト（.m3u8）<br>
+ * マスタープレイリストの場合はバリアントの一覧、メディアプレイリストの場合はセグメントの一覧を保持
+ */
+public final class HlsPlaylist {
+
+	/** プレイリストのURI */
+	private final URI uri;
+
+	/** マスタープレイリスト（#EXT-X-STREAM-INF）の場合はtrue */
+	private final boolean master;
+
+	/** マスタープレイリストのバリアント一覧 */
+	private final List<URI> variants;
+
+	/** メディアプレイリストのセグメント一覧 */
+	private final List<HlsSegment> segments;
+
+	/** セグメントの最大再生時間（秒） */
+	private final long targetDuration;
+
+	/** 終端タグ（#EXT-X-ENDLIST）の有無、VOD（オンデマンド）はtrue */
+	private final boolean endList;
+
+	/** 暗号化（#EXT-X-KEY）の有無 */
+	private final boolean encrypted;
+
+	/**
+	 * コンストラクタ
+	 * @param _uri プレイリストのURI
+	 * @param _master マスタープレイリストの場合はtrue
+	 * @param _variants バリアント一覧
+	 * @param _segments セグメント一覧
+	 * @param _targetDuration セグメントの最大再生時間（秒）
+	 * @param _endList 終端タグの有無
+	 * @param _encrypted 暗号化の有無
+	 */
+	private HlsPlaylist(URI _uri, boolean _master, List<URI> _variants, List<HlsSegment> _segments, long _targetDuration, boolean _endList, boolean _encrypted) {
+		this.uri = _uri;
+		this.master = _master;
+		this.variants = Collections.unmodifiableList(_variants);
+		this.segments = Collections.unmodifiableList(_segments);
+		this.targetDuration = _targetDuration;
+		this.endList = _endList;
+		this.encrypted = _encrypted;
+	}
+
+	/**
+	 * プレイリストの解析
+	 * @param _uri プレイリストのURI、相対URIの解決に使用
+	 * @param _text プレイリストの内容
+	 * @return 解析結果のプレイリスト
+	 * @throws IllegalArgumentException HLSのプレイリストではない
+	 */
+	public static HlsPlaylist parse(URI _uri, String _text) {
+		Objects.requireNonNull(_uri);
+		String[] lines = Objects.requireNonNull(_text).split("\\R");
+		if (lines.length == 0 || !lines[0].strip().startsWith("#EXTM3U"))
+			throw new IllegalArgumentException("HLSのプレイリストではない#" + _uri);
+
+		List<URI> variants = new ArrayList<>(0);
+		List<HlsSegment> segments = new ArrayList<>(0);
+		long sequence = 0L;
+		long targetDuration = 0L;
+		boolean endList = false;
+		boolean encrypted = false;
+		boolean master = false;
+		boolean variant = false;
+		boolean discontinuity = false;
+		double duration = 0d;
+		Instant programDateTime = null;
+
+		for (String raw : lines) {
+			String line = raw.strip();
+			if (line.isEmpty()) {
+				continue;
+			} else if (line.startsWith("#EXT-X-STREAM-INF")) {
+				master = true;
+				variant = true;
+			} else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+				sequence = Long.parseLong(line.substring(line.indexOf(':') + 1).strip());
+			} else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+				targetDuration = Long.parseLong(line.substring(line.indexOf(':') + 1).strip());
+			} else if (line.startsWith("#EXTINF:")) {
+				String value = line.substring(line.indexOf(':') + 1);
+				int comma = value.indexOf(',');
+				duration = Double.parseDouble((comma < 0 ? value : value.substring(0, comma)).strip());
+			} else if (line.startsWith("#EXT-X-DISCONTINUITY") && !line.startsWith("#EXT-X-DISCONTINUITY-SEQUENCE")) {
+				discontinuity = true;
+			} else if (line.startsWith("#EXT-X-PROGRAM-DATE-TIME:")) {
+				try {
+					programDateTime = OffsetDateTime.parse(line.substring(line.indexOf(':') + 1).strip()).toInstant();
+				} catch (DateTimeParseException e) {
+					programDateTime = null;
+				}
+			} else if (line.startsWith("#EXT-X-KEY:")) {
+				encrypted = !line.contains("METHOD=NONE");
+			} else if (line.startsWith("#EXT-X-ENDLIST")) {
+				endList = true;
+			} else if (line.startsWith("#")) {
+				continue;
+			} else if (variant) {
+				variants.add(_uri.resolve(line));
+				variant = false;
+			} else {
+				segments.add(new HlsSegment(sequence++, _uri.resolve(line), duration, discontinuity, programDateTime));
+				if (Objects.nonNull(programDateTime))
+					programDateTime = programDateTime.plusMillis(Math.round(duration * 1000d));
+				discontinuity = false;
+				duration = 0d;
+			}
+		}
+		return new HlsPlaylist(_uri, master, variants, segments, targetDuration, endList, encrypted);
+	}
+
+	/** @return プレイリストのURI */
+	public URI getUri() {
+		return this.uri;
+	}
+
+	/** @return マスタープレイリストの場合はtrue、バリアントのURIが無い場合もtrue */
+	public boolean isMaster() {
+		return this.master;
+	}
+
+	/** @return マスタープレイリストのバリアント一覧、URIの無いバリアントは除外 */
+	public List<URI> getVariants() {
+		return this.variants;
+	}
+
+	/** @return メディアプレイリストのセグメント一覧 */
+	public List<HlsSegment> getSegments() {
+		return this.segments;
+	}
+
+	/** @return セグメントの最大再生時間（秒） */
+	public long getTargetDuration() {
+		return this.targetDuration;
+	}
+
+	/** @return VOD（オンデマンド）のプレイリストの場合はtrue */
+	public boolean isEndList() {
+		return this.endList;
+	}
+
+	/** @return 暗号化されている場合はtrue */
+	public boolean isEncrypted() {
+		return this.encrypted;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * HLSのセグメントファイル（.ts）
+ */
+public final class HlsSegment {
+
+	/** メディアシーケンス番号 */
+	private final long sequence;
+
+	/** セグメントファイルのURI */
+	private final URI uri;
+
+	/** セグメントの再生時間（秒） */
+	private final double duration;
+
+	/** 直前のセグメントとの不連続（#EXT-X-DISCONTINUITY） */
+	private final boolean discontinuity;
+
+	/** セグメント先頭の放送時刻（#EXT-X-PROGRAM-DATE-TIME）、不明な場合はnull */
+	private final Instant programDateTime;
+
+	/**
+	 * コンストラクタ
+	 * @param _sequence メディアシーケンス番号
+	 * @param _uri セグメントファイルのURI
+	 * @param _duration セグメントの再生時間（秒）
+	 * @param _discontinuity 直前のセグメントとの不連続
+	 */
+	public HlsSegment(long _sequence, URI _uri, double _duration, boolean _discontinuity) {
+		this(_sequence, _uri, _duration, _discontinuity, null);
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param _sequence メディアシーケンス番号
+	 * @param _uri セグメントファイルのURI
+	 * @param _duration セグメントの再生時間（秒）
+	 * @param _discontinuity 直前のセグメントとの不連続
+	 * @param _programDateTime セグメント先頭の放送時刻、不明な場合はnull
+	 */
+	public HlsSegment(long _sequence, URI _uri, double _duration, boolean _discontinuity, Instant _programDateTime) {
+		this.sequence = _sequence;
+		this.uri = Objects.requireNonNull(_uri);
+		this.duration = _duration;
+		this.discontinuity = _discontinuity;
+		this.programDateTime = _programDateTime;
+	}
+
+	/** @return メディアシーケンス番号 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/** @return セグメントファイルのURI */
+	public URI getUri() {
+		return this.uri;
+	}
+
+	/** @return セグメントの再生時間（秒） */
+	public double getDuration() {
+		return this.duration;
+	}
+
+	/** @return 直前のセグメントとの不連続 */
+	public boolean isDiscontinuity() {
+		return this.discontinuity;
+	}
+
+	/** @return セグメント先頭の放送時刻、不明な場合はnull */
+	public Instant getProgramDateTime() {
+		return this.programDateTime;
+	}
+
+	/**
+	 * 不連続を設定したセグメント
+	 * @return 直前のセグメントとの不連続を設定したセグメント
+	 */
+	public HlsSegment asDiscontinuity() {
+		return new HlsSegment(this.sequence, this.uri, this.duration, true, this.programDateTime);
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("HlsSegment[").append(this.sequence)
+				.append(", ").append(this.uri)
+				.append(", ").append(this.duration)
+				.append(this.discontinuity ? ", discontinuity]" : "]").toString();
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.IOException;
+
+/**
+ * 受信したセグメントファイル（.ts）の出力先
+ */
+@FunctionalInterface
+public interface HlsSegmentSink {
+
+	/**
+	 * セグメントファイルの出力
+	 * @param _segment セグメント
+	 * @param _data セグメントファイルの内容
+	 * @throws IOException 出力失敗、受信を終了
+	 */
+	void accept(HlsSegment _segment, byte[] _data) throws IOException;
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ライブ配信のセグメントファイル（.ts）の受信<br>
+ * メディアプレイリストを定期的に取得して新しいセグメントファイルを順番通りに出力<br>
+ * 受信中のミラーが劣化した場合はセグメントの境界で別のミラーへ切り替え
+ */
+public class LiveHlsSource {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(LiveHlsSource.class.getName());
+
+    /** 受信開始時にさかのぼるセグメント数（FFMPEGのlive_start_indexと同じ） */
+    private static final int LIVE_START_SEGMENTS = 3;
+
+    /** 待機中のミラーを計測するプレイリスト取得間隔 */
+    private static final int PROBE_INTERVAL = 6;
+
+    /** HLSクライアント */
+	private final HlsClient client;
+
+	/** ミラーの選択 */
+	private final MirrorSelector selector;
+
+	/**
+	 * コンストラクタ
+	 * @param _client HLSクライアント
+	 * @param _selector ミラーの選択
+	 */
+	public LiveHlsSource(HlsClient _client, MirrorSelector _selector) {
+		this.client = Objects.requireNonNull(_client);
+		this.selector = Objects.requireNonNull(_selector);
+	}
+
+	/**
+	 * 指定時刻までセグメントファイルを受信
+	 * @param _sink セグメントファイルの出力先
+	 * @param _until 受信終了時刻
+	 * @throws IOException 出力先への出力失敗
+	 * @throws InterruptedException 受信中のスレッド割り込み
+	 */
+	public void stream(HlsSegmentSink _sink, Instant _until) throws IOException, InterruptedException {
+		MirrorHealth current = this.selector.prewarm(this.client);
+		HlsSegment last = null;
+		boolean switched = false;
+		int polls = 0;
+
+		while (Instant.now().isBefore(_until)) {
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedException();
+
+			long targetMillis = 1_000L;
+			HlsPlaylist playlist = this.selector.probe(this.client, current);
+			if (Objects.nonNull(playlist)) {
+				targetMillis = Math.max(1L, playlist.getTargetDuration()) * 1_000L;
+				List<HlsSegment> fresh = this.fresh(playlist, last, switched);
+				boolean received = true;
+				for (HlsSegment segment : fresh) {
+					byte[] data;
+					try {
+						data = this.client.getSegment(segment);
+					} catch (IOException | IllegalArgumentException e) {
+						LOG.log(Level.WARNING, "ライブ配信の取得失敗#" + current.getUri(), e);
+						current.error();
+						received = false;
+						break;
+					}
+					// 出力先への出力失敗はミラーの障害ではないため呼び出し元へ通知
+					_sink.accept(segment, data);
+					last = segment;
+				}
+				switched = switched && (fresh.isEmpty() || !received);
+			}
+
+			if (++polls % PROBE_INTERVAL == 0) {
+				for (MirrorHealth mirror : this.selector.getMirrors()) {
+					if (mirror != current)
+						this.selector.probe(this.client, mirror);
+				}
+			}
+			if (this.selector.isDegraded(current)) {
+				MirrorHealth next = this.selector.best(current);
+				LOG.log(Level.WARNING, "ミラー切り替え#" + current + " -> " + next);
+				current = next;
+				switched = true;
+				continue;
+			}
+
+			Duration remaining = Duration.between(Instant.now(), _until);
+			long wait = remaining.compareTo(Duration.ofMillis(targetMillis / 2L)) < 0 ? remaining.toMillis() : targetMillis / 2L;
+			if (wait > 0L)
+				TimeUnit.MILLISECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * 未受信のセグメント一覧<br>
+	 * ミラー切り替え直後は放送時刻、メディアシーケンス番号の順で続きのセグメントを探し、
+	 * 欠落がある場合は欠落後のセグメントを不連続として受信
+	 * @param _playlist メディアプレイリスト
+	 * @param _last 最後に受信したセグメント、未受信の場合はnull
+	 * @param _switched ミラー切り替え直後の場合はtrue
+	 * @return 未受信のセグメント一覧
+	 */
+	List<HlsSegment> fresh(HlsPlaylist _playlist, HlsSegment _last, boolean _switched) {
+		List<HlsSegment> segments = _playlist.getSegments();
+		if (segments.isEmpty()) {
+			return segments;
+		} else if (Objects.isNull(_last)) {
+			return segments.subList(Math.max(0, segments.size() - LIVE_START_SEGMENTS), segments.size());
+		} else if (!_switched) {
+			return segments.stream().filter(s -> s.getSequence() > _last.getSequence()).toList();
+		}
+
+		Instant lastTime = _last.getProgramDateTime();
+		if (Objects.nonNull(lastTime) && segments.stream().allMatch(s -> Objects.nonNull(s.getProgramDateTime()))) {
+			List<HlsSegment> next = segments.stream().filter(s -> s.getProgramDateTime().isAfter(lastTime)).toList();
+			if (next.isEmpty() || !next.get(0).getProgramDateTime().isAfter(lastTime.plusMillis(Math.round(_last.getDuration() * 1500d))))
+				return next;
+			LOG.log(Level.WARNING, "ミラー切り替えで欠落あり#" + lastTime + " -> " + next.get(0).getProgramDateTime());
+			List<HlsSegment> gap = new ArrayList<>(next);
+			gap.set(0, next.get(0).asDiscontinuity());
+			return gap;
+		} else if (segments.get(0).getSequence() <= _last.getSequence() + 1L
+				&& segments.get(segments.size() - 1).getSequence() > _last.getSequence()) {
+			return segments.stream().filter(s -> s.getSequence() > _last.getSequence()).toList();
+		}
+		LOG.log(Level.WARNING, "ミラー切り替えで続きのセグメントが不明、最新のセグメントから受信");
+		return List.of(segments.get(segments.size() - 1).asDiscontinuity());
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ミラーURIの健全性<br>
+ * 応答時間、エラー率、停滞時間を指数移動平均で記録し、値が小さいほど健全なスコアを算出<br>
+ * 受信中と待機中のミラーを同じ基準で比較するため、全てメディアプレイリストの取得結果から計測
+ */
+public final class MirrorHealth {
+
+	/** 指数移動平均の平滑化係数 */
+	private static final double ALPHA = 0.3d;
+
+	/** エラー率1.0あたりのスコア加算（ミリ秒換算） */
+	private static final double ERROR_PENALTY_MILLIS = 10_000d;
+
+	/** ミラーのURI */
+	private final URI uri;
+
+	/** 応答時間の移動平均（ミリ秒） */
+	private double latencyMillis = 0d;
+
+	/** エラー率の移動平均 */
+	private double errorRate = 0d;
+
+	/** 停滞時間の移動平均（ミリ秒） */
+	private double stallMillis = 0d;
+
+	/** 連続エラー回数 */
+	private int consecutiveErrors = 0;
+
+	/** 最新セグメントのメディアシーケンス番号 */
+	private long lastSequence = -1L;
+
+	/** 最新セグメントが更新された時刻（{@link System#nanoTime()}） */
+	private long lastAdvance = 0L;
+
+	/** 計測済みの場合はtrue */
+	private boolean sampled = false;
+
+	/**
+	 * コンストラクタ
+	 * @param _uri ミラーのURI
+	 */
+	public MirrorHealth(URI _uri) {
+		this.uri = Objects.requireNonNull(_uri);
+	}
+
+	/** @return ミラーのURI */
+	public URI getUri() {
+		return this.uri;
+	}
+
+	/**
+	 * メディアプレイリスト取得成功の記録<br>
+	 * 最新セグメントの更新間隔がターゲット再生時間を超えた時間を停滞時間として記録
+	 * @param _playlist 取得したメディアプレイリスト
+	 * @param _latency 応答時間
+	 * @param _nanoTime 取得した時刻（{@link System#nanoTime()}）
+	 */
+	public synchronized void success(HlsPlaylist _playlist, Duration _latency, long _nanoTime) {
+		double millis = _latency.toNanos() / 1_000_000d;
+		this.latencyMillis = this.sampled ? ALPHA * millis + (1d - ALPHA) * this.latencyMillis : millis;
+		this.errorRate = (1d - ALPHA) * this.errorRate;
+		this.consecutiveErrors = 0;
+
+		List<HlsSegment> segments = _playlist.getSegments();
+		long sequence = segments.isEmpty() ? this.lastSequence : segments.get(segments.size() - 1).getSequence();
+		if (!this.sampled || sequence > this.lastSequence) {
+			this.lastSequence = sequence;
+			this.lastAdvance = _nanoTime;
+		}
+		double overdue = (_nanoTime - this.lastAdvance) / 1_000_000d - Math.max(1L, _playlist.getTargetDuration()) * 1_000d;
+		this.stallMillis = ALPHA * Math.max(0d, overdue) + (1d - ALPHA) * this.stallMillis;
+		this.sampled = true;
+	}
+
+	/** 取得失敗の記録 */
+	public synchronized void error() {
+		this.errorRate = ALPHA + (1d - ALPHA) * this.errorRate;
+		this.consecutiveErrors++;
+		this.sampled = true;
+	}
+
+	/** @return 連続エラー回数 */
+	public synchronized int getConsecutiveErrors() {
+		return this.consecutiveErrors;
+	}
+
+	/** @return 計測済みの場合はtrue */
+	public synchronized boolean isSampled() {
+		return this.sampled;
+	}
+
+	/** @return 健全性のスコア、値が小さいほど健全 */
+	public synchronized double score() {
+		return this.latencyMillis + this.errorRate * ERROR_PENALTY_MILLIS + this.stallMillis;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("MirrorHealth[%s, score=%.1f, latency=%.1fms, error=%.2f, stall=%.1fms]",
+				this.uri, this.score(), this.latencyMillis, this.errorRate, this.stallMillis);
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 放送局のミラーURIの選択<br>
+ * 録音開始前に全てのミラーを計測して最も健全なミラーを選択し、録音中は劣化したミラーを切り替え
+ */
+public class MirrorSelector {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(MirrorSelector.class.getName());
+
+    /** 劣化と判定する連続エラー回数 */
+    private static final int MAX_CONSECUTIVE_ERRORS = 2;
+
+    /** 劣化と判定するスコアの比率 */
+    private static final double DEGRADED_RATIO = 2d;
+
+    /** 劣化と判定するスコアの差（ミリ秒換算） */
+    private static final double DEGRADED_MARGIN_MILLIS = 1_000d;
+
+    /** ミラーの健全性一覧 */
+	private final List<MirrorHealth> mirrors;
+
+	/**
+	 * コンストラクタ
+	 * @param _uris ミラーURIの一覧
+	 */
+	public MirrorSelector(List<URI> _uris) {
+		if (Objects.requireNonNull(_uris).isEmpty())
+			throw new IllegalArgumentException("ミラーURIが未設定");
+		this.mirrors = _uris.stream().map(MirrorHealth::new).toList();
+	}
+
+	/** @return ミラーの健全性一覧 */
+	public List<MirrorHealth> getMirrors() {
+		return this.mirrors;
+	}
+
+	/**
+	 * 全てのミラーを計測して最も健全なミラーを選択
+	 * @param _client HLSクライアント
+	 * @return 最も健全なミラー
+	 * @throws InterruptedException 計測中のスレッド割り込み
+	 */
+	public MirrorHealth prewarm(HlsClient _client) throws InterruptedException {
+		for (MirrorHealth mirror : this.mirrors) {
+			this.probe(_client, mirror);
+		}
+		MirrorHealth best = this.best(null);
+		LOG.log(Level.INFO, "ミラー選択#" + best);
+		return best;
+	}
+
+	/**
+	 * プレイリストを取得してミラーを計測<br>
+	 * 受信中のミラーのプレイリスト取得も同じ計測を使用
+	 * @param _client HLSクライアント
+	 * @param _mirror 計測するミラー
+	 * @return 取得したメディアプレイリスト、取得失敗の場合はnull
+	 * @throws InterruptedException 計測中のスレッド割り込み
+	 */
+	public HlsPlaylist probe(HlsClient _client, MirrorHealth _mirror) throws InterruptedException {
+		HlsPlaylist playlist = null;
+		long start = System.nanoTime();
+		try {
+			playlist = _client.getPlaylist(_mirror.getUri());
+			long end = System.nanoTime();
+			_mirror.success(playlist, Duration.ofNanos(end - start), end);
+		} catch (IOException | IllegalArgumentException e) {
+			LOG.log(Level.WARNING, "ミラー計測失敗#" + _mirror.getUri(), e);
+			_mirror.error();
+		}
+		LOG.log(Level.DEBUG, _mirror);
+		return playlist;
+	}
+
+	/**
+	 * 最も健全なミラー
+	 * @param _exclude 除外するミラー、除外しない場合はnull
+	 * @return 最も健全なミラー、除外して候補が無い場合は除外したミラー
+	 */
+	public MirrorHealth best(MirrorHealth _exclude) {
+		return this.mirrors.stream()
+				.filter(mirror -> mirror != _exclude)
+				.min(Comparator.comparingDouble(MirrorHealth::score))
+				.orElse(_exclude);
+	}
+
+	/**
+	 * ミラーの劣化判定<br>
+	 * 連続エラー、もしくは他のミラーよりスコアが大幅に悪い場合は劣化
+	 * @param _current 録音中のミラー
+	 * @return 劣化している場合はtrue
+	 */
+	public boolean isDegraded(MirrorHealth _current) {
+		MirrorHealth alternative = this.best(_current);
+		if (alternative == _current)
+			return false;
+		if (_current.getConsecutiveErrors() >= MAX_CONSECUTIVE_ERRORS)
+			return true;
+		return _current.score() > alternative.score() * DEGRADED_RATIO + DEGRADED_MARGIN_MILLIS;
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * HLS（HTTP Live Streaming）のプレイリストとセグメントファイルを扱うパッケージ
+ */
+package cyou.obliquerays.media.hls;
@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * FFMPEGプロセスの監視<br>
+ * FFMPEGの出力、もしくはセグメントファイルの中継からセグメント受信と停滞を検知してJFRイベントを記録<br>
+ * 停滞は監視ごとの専用スレッドで定期的に判定し、JFRの記録中のみ定期的にCPU時間とRSSをサンプリング
+ */
+public class EncoderMonitor implements AutoCloseable {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(EncoderMonitor.class.getName());
+
+	/** FFMPEGのセグメントファイル読み込みログ */
+	private static final Pattern OPENING = Pattern.compile("Opening '(.+?)' for reading");
+
+	/** FFMPEGの停滞と判定する出力の途絶時間 */
+	private static final long STALL_THRESHOLD_NANOS = Duration.ofSeconds(10L).toNanos();
+
+	/** FFMPEGの停滞の判定間隔（秒） */
+	private static final long STALL_CHECK_SECONDS = 5L;
+
+	/** 録音ファイル */
+	private final String file;
+
+	/** FFMPEGプロセス */
+	private final ProcessHandle process;
+
+	/** FFMPEG起動時刻 */
+	private final long startNanos = System.nanoTime();
+
+	/** FFMPEGの最後の出力時刻 */
+	private final AtomicLong lastOutputNanos = new AtomicLong(this.startNanos);
+
+	/** 直前のセグメント受信時刻 */
+	private final AtomicLong lastSegmentNanos = new AtomicLong(0L);
+
+	/** 受信したセグメントファイル数 */
+	private final AtomicInteger segments = new AtomicInteger(0);
+
+	/** 録音時間全体のイベント */
+	private final RecordingFinishedEvent finished = new RecordingFinishedEvent();
+
+	/** 停滞中の場合はtrue、停滞の開始だけをログ出力 */
+	private final AtomicBoolean stalling = new AtomicBoolean(false);
+
+	/** JFRの定期イベント用フック */
+	private final Runnable sampler = this::sample;
+
+	/** 停滞の定期判定 */
+	private final ScheduledExecutorService watchdog;
+
+	/**
+	 * コンストラクタ
+	 * @param _file 録音ファイル
+	 * @param _process FFMPEGプロセス
+	 */
+	public EncoderMonitor(Path _file, Process _process) {
+		this(_file, Objects.requireNonNull(_process).toHandle());
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param _file 録音ファイル
+	 * @param _process FFMPEGプロセス
+	 */
+	EncoderMonitor(Path _file, ProcessHandle _process) {
+		this.file = Objects.requireNonNull(_file).toString();
+		this.process = Objects.requireNonNull(_process);
+		this.finished.begin();
+		FlightRecorder.addPeriodicEvent(EncoderProcessSampleEvent.class, this.sampler);
+		this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "encoder-watchdog-" + this.process.pid());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.watchdog.scheduleWithFixedDelay(() -> this.checkStall(System.nanoTime()),
+				STALL_CHECK_SECONDS, STALL_CHECK_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * FFMPEGの出力1行を解析
+	 * @param _line FFMPEGの出力
+	 */
+	public void onOutput(String _line) {
+		long now = System.nanoTime();
+		this.lastOutputNanos.set(now);
+
+		Matcher matcher = OPENING.matcher(_line);
+		if (matcher.find() && !matcher.group(1).endsWith(".m3u8"))
+			this.onSegment(matcher.group(1));
+	}
+
+	/**
+	 * セグメントファイルの受信を記録
+	 * @param _uri セグメントファイルのURI
+	 */
+	public void onSegment(String _uri) {
+		long now = System.nanoTime();
+		this.lastOutputNanos.set(now);
+
+		long previous = this.lastSegmentNanos.getAndSet(now);
+		if (this.segments.getAndIncrement() == 0) {
+			RecordingStartedEvent started = new RecordingStartedEvent();
+			if (started.isEnabled()) {
+				started.file = this.file;
+				started.latency = now - this.startNanos;
+				started.commit();
+			}
+		}
+		SegmentFetchedEvent fetched = new SegmentFetchedEvent();
+		if (fetched.isEnabled()) {
+			fetched.file = this.file;
+			fetched.uri = _uri;
+			fetched.interval = previous == 0L ? 0L : now - previous;
+			fetched.commit();
+		}
+	}
+
+	/**
+	 * JFRの定期イベント<br>
+	 * FFMPEGのCPU時間とRSSを記録
+	 */
+	private void sample() {
+		if (!this.process.isAlive())
+			return;
+
+		EncoderProcessSampleEvent sample = new EncoderProcessSampleEvent();
+		sample.file = this.file;
+		sample.pid = this.process.pid();
+		sample.cpuTime = this.process.info().totalCpuDuration().map(Duration::toNanos).orElse(-1L);
+		sample.rss = residentSetSize(this.process.pid());
+		sample.commit();
+	}
+
+	/**
+	 * FFMPEGの出力の途絶を判定<br>
+	 * 停滞中は判定ごとに停滞イベントを記録
+	 * @param _nowNanos 判定時刻（{@link System#nanoTime()}）
+	 * @return 停滞中の場合はtrue
+	 */
+	boolean checkStall(long _nowNanos) {
+		long stalled = _nowNanos - this.lastOutputNanos.get();
+		if (stalled < STALL_THRESHOLD_NANOS || !this.process.isAlive()) {
+			this.stalling.set(false);
+			return false;
+		}
+		if (!this.stalling.getAndSet(true))
+			LOG.log(Level.WARNING, "FFMPEGの出力が途絶#" + this.file);
+		EncoderStalledEvent event = new EncoderStalledEvent();
+		if (event.isEnabled()) {
+			event.file = this.file;
+			event.pid = this.process.pid();
+			event.stalled = stalled;
+			event.commit();
+		}
+		return true;
+	}
+
+	/**
+	 * /proc/[pid]/status からRSSを取得
+	 * @param _pid プロセスID
+	 * @return RSS（バイト）、取得できない場合は-1
+	 */
+	static long residentSetSize(long _pid) {
+		Path status = Path.of("/proc", String.valueOf(_pid), "status");
+		try {
+			List<String> lines = Files.readAllLines(status, StandardCharsets.US_ASCII);
+			for (String line : lines) {
+				if (line.startsWith("VmRSS:")) {
+					String[] values = line.substring(6).trim().split("\\s+");
+					return Long.parseLong(values[0]) * 1024L;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// /procの無い環境、もしくはプロセス終了済み
+		}
+		return -1L;
+	}
+
+	/** @return 受信したセグメントファイル数 */
+	public int getSegments() {
+		return this.segments.get();
+	}
+
+	/**
+	 * 録音終了イベントを記録
+	 * @param _exitCode FFMPEGの終了コード
+	 * @param _size 録音ファイルのサイズ
+	 */
+	public void finish(int _exitCode, long _size) {
+		this.finished.end();
+		if (this.finished.shouldCommit()) {
+			this.finished.file = this.file;
+			this.finished.exitCode = _exitCode;
+			this.finished.segments = this.segments.get();
+			this.finished.size = _size;
+			this.finished.commit();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.watchdog.shutdownNow();
+		FlightRecorder.removePeriodicEvent(this.sampler);
+	}
+}
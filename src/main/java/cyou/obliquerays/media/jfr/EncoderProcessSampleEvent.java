@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * FFMPEGプロセスのリソース使用量の定期サンプリングイベント
+ */
+@Name("cyou.obliquerays.media.EncoderProcessSample")
+@Label("Encoder Process Sample")
+@Category({"Radio Recorder", "Encoder"})
+@Description("FFMPEGプロセスのCPU時間とRSS")
+@Period("1 s")
+@StackTrace(false)
+public class EncoderProcessSampleEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** FFMPEGのプロセスID */
+	@Label("PID")
+	public long pid;
+
+	/** FFMPEGの累積CPU時間 */
+	@Label("CPU Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long cpuTime;
+
+	/** FFMPEGの常駐メモリサイズ（/proc/[pid]/status#VmRSS） */
+	@Label("Resident Set Size")
+	@DataAmount
+	public long rss;
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * FFMPEG停滞イベント<br>
+ * FFMPEGの出力が一定時間途絶えた場合に記録
+ */
+@Name("cyou.obliquerays.media.EncoderStalled")
+@Label("Encoder Stalled")
+@Category({"Radio Recorder", "Encoder"})
+@Description("FFMPEGの出力が途絶えている")
+@StackTrace(false)
+public class EncoderStalledEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** FFMPEGのプロセスID */
+	@Label("PID")
+	public long pid;
+
+	/** FFMPEGの最後の出力からの経過時間 */
+	@Label("Stalled")
+	@Timespan(Timespan.NANOSECONDS)
+	public long stalled;
+}
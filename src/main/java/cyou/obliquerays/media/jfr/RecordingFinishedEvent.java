@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 録音終了イベント<br>
+ * イベントの期間はFFMPEG起動から終了までの時間
+ */
+@Name("cyou.obliquerays.media.RecordingFinished")
+@Label("Recording Finished")
+@Category({"Radio Recorder", "Recording"})
+@Description("FFMPEGが終了")
+@StackTrace(false)
+public class RecordingFinishedEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** FFMPEGの終了コード */
+	@Label("Exit Code")
+	public int exitCode;
+
+	/** 受信したセグメントファイル数 */
+	@Label("Segments")
+	public int segments;
+
+	/** 録音ファイルのサイズ */
+	@Label("File Size")
+	@DataAmount
+	public long size;
+}
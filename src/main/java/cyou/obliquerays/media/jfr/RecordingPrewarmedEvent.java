@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 録音開始時間前の録音準備イベント<br>
+ * 録音開始時間の{@link cyou.obliquerays.media.schedule.RecordingSchedule#LEAD}前に録音処理を始めた時点で記録し、遅れて始めた録音は記録しない
+ */
+@Name("cyou.obliquerays.media.RecordingPrewarmed")
+@Label("Recording Prewarmed")
+@Category({"Radio Recorder", "Recording"})
+@Description("録音開始時間の前に録音処理を開始")
+@StackTrace(false)
+public class RecordingPrewarmedEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** 録音開始日時 */
+	@Label("Start")
+	public String start;
+
+	/** 録音開始時間までの時間 */
+	@Label("Lead Time")
+	@Timespan
+	public long lead;
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 録音ファイル公開イベント<br>
+ * オブジェクトストレージへアップロードする場合はアップロード完了、それ以外は保存ディレクトリでの重複排除の後に記録
+ */
+@Name("cyou.obliquerays.media.RecordingPublished")
+@Label("Recording Published")
+@Category({"Radio Recorder", "Recording"})
+@Description("録音ファイルを保存ディレクトリもしくはオブジェクトストレージへ公開")
+@StackTrace(false)
+public class RecordingPublishedEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** 公開先、保存ディレクトリのファイルもしくはオブジェクトのキー */
+	@Label("Destination")
+	public String destination;
+
+	/** 録音ファイルのサイズ */
+	@Label("File Size")
+	@DataAmount
+	public long size;
+}
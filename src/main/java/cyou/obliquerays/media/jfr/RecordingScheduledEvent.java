@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 録音予約イベント
+ */
+@Name("cyou.obliquerays.media.RecordingScheduled")
+@Label("Recording Scheduled")
+@Category({"Radio Recorder", "Recording"})
+@Description("録音処理をスレッドへ投入")
+@StackTrace(false)
+public class RecordingScheduledEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** 録音開始時間 */
+	@Label("Start Time")
+	public String start;
+
+	/** 録音終了時間 */
+	@Label("End Time")
+	public String end;
+}
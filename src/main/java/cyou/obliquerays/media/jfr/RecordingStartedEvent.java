@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 録音開始イベント<br>
+ * 最初のセグメントファイル（.ts）の受信を録音開始とする
+ */
+@Name("cyou.obliquerays.media.RecordingStarted")
+@Label("Recording Started")
+@Category({"Radio Recorder", "Recording"})
+@Description("最初のセグメントファイルを受信")
+@StackTrace(false)
+public class RecordingStartedEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** FFMPEG起動から最初のセグメント受信までの時間 */
+	@Label("Startup Latency")
+	@Timespan(Timespan.NANOSECONDS)
+	public long latency;
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * セグメントファイル（.ts）受信イベント
+ */
+@Name("cyou.obliquerays.media.SegmentFetched")
+@Label("Segment Fetched")
+@Category({"Radio Recorder", "Network"})
+@Description("HLSのセグメントファイルを受信")
+@StackTrace(false)
+public class SegmentFetchedEvent extends jdk.jfr.Event {
+
+	/** 録音ファイル */
+	@Label("File")
+	public String file;
+
+	/** セグメントファイルのURI */
+	@Label("Segment URI")
+	public String uri;
+
+	/** 直前のセグメント受信からの経過時間 */
+	@Label("Interval")
+	@Timespan(Timespan.NANOSECONDS)
+	public long interval;
+}
@@ -0,0 +1,4 @@
+/**
+ * 録音処理のJDK Flight Recorderイベントのパッケージ
+ */
+package cyou.obliquerays.media.jfr;
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.publish;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 送信帯域の上限<br>
+ * 送信するデータを小さなチャンクに分け、チャンクごとに次の送信可能時刻まで待機して送信速度を平準化<br>
+ * 並列に送信する複数のリクエストで上限を共有
+ */
+public final class BandwidthLimiter {
+
+	/** 無制限 */
+	public static final BandwidthLimiter UNLIMITED = new BandwidthLimiter(0L);
+
+	/** 1回の待機で送信するチャンクのサイズ（バイト） */
+	static final int CHUNK = 64 * 1024;
+
+	/** 送信帯域の上限（バイト/秒）、0の場合は無制限 */
+	private final long bytesPerSecond;
+
+	/** 送信帯域の次の空き時刻 */
+	private long nextSendNanos = System.nanoTime();
+
+	/**
+	 * コンストラクタ
+	 * @param _bytesPerSecond 送信帯域の上限（バイト/秒）、0の場合は無制限
+	 */
+	public BandwidthLimiter(long _bytesPerSecond) {
+		this.bytesPerSecond = Math.max(0L, _bytesPerSecond);
+	}
+
+	/**
+	 * 送信量に応じて次の送信可能時刻を進め、上限を超える場合は待機
+	 * @param _bytes 送信量
+	 * @throws InterruptedException 待機中のスレッド割り込み
+	 */
+	public void acquire(int _bytes) throws InterruptedException {
+		if (this.bytesPerSecond == 0L)
+			return;
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long start = Math.max(now, this.nextSendNanos);
+			this.nextSendNanos = start + TimeUnit.SECONDS.toNanos(_bytes) / this.bytesPerSecond;
+			wait = start - now;
+		}
+		if (wait > 0L)
+			TimeUnit.NANOSECONDS.sleep(wait);
+	}
+
+	/**
+	 * チャンクごとに送信帯域を制御する入力ストリーム
+	 * @param _in 送信するデータ
+	 * @return 1回の読み取りがチャンク以下に制限された入力ストリーム、無制限の場合はそのまま
+	 */
+	public InputStream limit(InputStream _in) {
+		if (this.bytesPerSecond == 0L)
+			return _in;
+		return new FilterInputStream(_in) {
+			@Override
+			public int read() throws IOException {
+				byte[] one = new byte[1];
+				return this.read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] _buffer, int _offset, int _length) throws IOException {
+				int length = this.in.read(_buffer, _offset, Math.min(_length, CHUNK));
+				if (length > 0) {
+					try {
+						BandwidthLimiter.this.acquire(length);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("送信帯域の待機中に割り込み");
+					}
+				}
+				return length;
+			}
+		};
+	}
+}
@@ -0,0 +1,435 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.publish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import cyou.obliquerays.media.jfr.RecordingPublishedEvent;
+
+/**
+ * 録音ファイルをS3互換オブジェクトストレージへアップロード<br>
+ * マルチパートアップロードのパートを同時アップロード数の上限まで並列に送信し、
+ * 予約時に状態ファイル（[録音ファイル].upload）を作成して送信済みのパートを記録し、失敗時は間隔を延ばしながら再試行、
+ * 再試行しても失敗した場合やプロセス再起動後は次回起動時に再開<br>
+ * 録音中はパートの送信を待機し、チャンクごとの送信帯域の上限と低優先度のスレッドで録音と競合しないように制御
+ */
+public class ObjectStoragePublisher implements AutoCloseable {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(ObjectStoragePublisher.class.getName());
+
+    /** 状態ファイルの拡張子 */
+    private static final String STATE_SUFFIX = ".upload";
+
+    /** 録音中の待機間隔（秒） */
+    private static final long BUSY_WAIT_SECONDS = 10L;
+
+    /** パートの再試行回数 */
+    private static final int RETRY = 3;
+
+    /** 録音ファイル単位のアップロードの再試行回数 */
+    private static final int FILE_RETRY = 5;
+
+    /** 録音ファイル単位のアップロードの最初の再試行間隔 */
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1L);
+
+    /** 録音ファイル単位のアップロードの再試行間隔の上限 */
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(1L);
+
+    /** S3互換オブジェクトストレージ */
+	private final S3Client client;
+
+	/** オブジェクトキーの接頭辞 */
+	private final String prefix;
+
+	/** パートのサイズ（バイト） */
+	private final int partSize;
+
+	/** 送信帯域の上限 */
+	private final BandwidthLimiter limiter;
+
+	/** アップロード完了後に録音ファイルを削除 */
+	private final boolean deleteLocal;
+
+	/** 録音中の判定 */
+	private final BooleanSupplier busy;
+
+	/** 録音ファイル単位のアップロードの最初の再試行間隔 */
+	private final Duration retryDelay;
+
+	/** 録音ファイル単位のアップロードと再試行の予約 */
+	private final ScheduledExecutorService files;
+
+	/** パートの並列アップロード */
+	private final ExecutorService parts;
+
+	/**
+	 * コンストラクタ
+	 * @param _client S3互換オブジェクトストレージ
+	 * @param _prefix オブジェクトキーの接頭辞
+	 * @param _partSize パートのサイズ（バイト）、5MB以上
+	 * @param _concurrency パートの同時アップロード数
+	 * @param _bytesPerSecond 送信帯域の上限（バイト/秒）、0の場合は無制限
+	 * @param _deleteLocal アップロード完了後に録音ファイルを削除する場合はtrue
+	 * @param _busy 録音中の判定
+	 */
+	public ObjectStoragePublisher(S3Client _client, String _prefix, int _partSize, int _concurrency,
+			long _bytesPerSecond, boolean _deleteLocal, BooleanSupplier _busy) {
+		this(_client, _prefix, _partSize, _concurrency, _bytesPerSecond, _deleteLocal, _busy, RETRY_DELAY);
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param _client S3互換オブジェクトストレージ
+	 * @param _prefix オブジェクトキーの接頭辞
+	 * @param _partSize パートのサイズ（バイト）、5MB以上
+	 * @param _concurrency パートの同時アップロード数
+	 * @param _bytesPerSecond 送信帯域の上限（バイト/秒）、0の場合は無制限
+	 * @param _deleteLocal アップロード完了後に録音ファイルを削除する場合はtrue
+	 * @param _busy 録音中の判定
+	 * @param _retryDelay 失敗したアップロードの最初の再試行間隔、以降は2倍ずつ延長
+	 */
+	public ObjectStoragePublisher(S3Client _client, String _prefix, int _partSize, int _concurrency,
+			long _bytesPerSecond, boolean _deleteLocal, BooleanSupplier _busy, Duration _retryDelay) {
+		this.client = Objects.requireNonNull(_client);
+		this.prefix = Objects.requireNonNullElse(_prefix, "");
+		this.partSize = Math.max(5 * 1024 * 1024, _partSize);
+		this.limiter = new BandwidthLimiter(_bytesPerSecond);
+		this.deleteLocal = _deleteLocal;
+		this.busy = Objects.requireNonNull(_busy);
+		this.retryDelay = Objects.requireNonNull(_retryDelay);
+		this.files = Executors.newSingleThreadScheduledExecutor(lowPriority("upload"));
+		this.parts = Executors.newFixedThreadPool(Math.max(1, _concurrency), lowPriority("upload-part"));
+	}
+
+	/**
+	 * 低優先度のデーモンスレッドの生成
+	 * @param _name スレッド名
+	 * @return スレッドの生成
+	 */
+	private static ThreadFactory lowPriority(String _name) {
+		AtomicInteger count = new AtomicInteger(0);
+		return runnable -> {
+			Thread thread = new Thread(runnable, _name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		};
+	}
+
+	/**
+	 * 録音ファイルのアップロードを予約<br>
+	 * アップロード前にプロセスが終了しても次回起動時に再開するように、予約時に状態ファイルを作成
+	 * @param _file 録音ファイル
+	 * @return アップロード結果、再試行しても失敗した場合はnull
+	 * @throws IOException 状態ファイルの作成失敗
+	 */
+	public Future<Path> submit(Path _file) throws IOException {
+		Path file = _file.toAbsolutePath().normalize();
+		Path statePath = statePath(file);
+		if (!Files.exists(statePath))
+			this.storeState(statePath, new Properties());
+		CompletableFuture<Path> result = new CompletableFuture<>();
+		this.files.execute(() -> this.attempt(file, 0, result));
+		return result;
+	}
+
+	/**
+	 * 録音ファイルのアップロードを実行<br>
+	 * 失敗した場合は再試行間隔を2倍ずつ延ばして再試行を予約し、再試行回数を超えた場合は次回起動時に再開
+	 * @param _file 録音ファイル
+	 * @param _attempt 再試行の回数
+	 * @param _result アップロード結果
+	 */
+	private void attempt(Path _file, int _attempt, CompletableFuture<Path> _result) {
+		try {
+			_result.complete(this.upload(_file));
+		} catch (InterruptedException e) {
+			LOG.log(Level.WARNING, "アップロードを中断、次回起動時に再開#" + _file);
+			Thread.currentThread().interrupt();
+			_result.complete(null);
+		} catch (IOException | ExecutionException | RuntimeException e) {
+			if (_attempt >= FILE_RETRY || !Files.exists(_file)) {
+				LOG.log(Level.ERROR, "アップロード失敗、次回起動時に再開#" + _file, e);
+				_result.complete(null);
+				return;
+			}
+			Duration delay = this.retryDelay.multipliedBy(1L << _attempt);
+			if (delay.compareTo(MAX_RETRY_DELAY) > 0)
+				delay = MAX_RETRY_DELAY;
+			LOG.log(Level.WARNING, "アップロード失敗、" + delay.toSeconds() + "秒後に再試行#" + _file, e);
+			try {
+				this.files.schedule(() -> this.attempt(_file, _attempt + 1, _result), delay.toMillis(), TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException r) {
+				LOG.log(Level.ERROR, "アップロード終了のため再試行せず、次回起動時に再開#" + _file);
+				_result.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * 状態ファイル
+	 * @param _file 録音ファイル
+	 * @return 録音ファイルと同じディレクトリの状態ファイル
+	 */
+	private static Path statePath(Path _file) {
+		return _file.resolveSibling(_file.getFileName() + STATE_SUFFIX);
+	}
+
+	/**
+	 * 状態ファイルが残っている中断したアップロードを再開
+	 * @param _baseDir 録音ファイル保存ディレクトリ
+	 * @throws IOException ディレクトリの読み取り失敗
+	 */
+	public void resume(Path _baseDir) throws IOException {
+		try (Stream<Path> states = Files.list(_baseDir)) {
+			for (Path state : states.filter(p -> p.getFileName().toString().endsWith(STATE_SUFFIX)).toList()) {
+				String name = state.getFileName().toString();
+				Path file = state.resolveSibling(name.substring(0, name.length() - STATE_SUFFIX.length()));
+				if (Files.exists(file)) {
+					LOG.log(Level.INFO, "中断したアップロードを再開#" + file);
+					this.submit(file);
+				} else {
+					Files.delete(state);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 録音ファイルのマルチパートアップロード
+	 * @param _file 録音ファイル
+	 * @return 録音ファイル
+	 * @throws IOException アップロード失敗
+	 * @throws InterruptedException アップロード中のスレッド割り込み
+	 * @throws ExecutionException パートのアップロード失敗
+	 */
+	private Path upload(Path _file) throws IOException, InterruptedException, ExecutionException {
+		String key = this.prefix + _file.getFileName();
+		long size = Files.size(_file);
+		long modified = Files.getLastModifiedTime(_file).toMillis();
+		Path statePath = statePath(_file);
+		Properties state = this.loadState(statePath, key, size, modified);
+
+		String uploadId = state.getProperty("uploadId");
+		if (Objects.isNull(uploadId)) {
+			uploadId = this.client.createMultipartUpload(key);
+			state.setProperty("uploadId", uploadId);
+			this.storeState(statePath, state);
+		}
+
+		int count = (int) Math.max(1L, (size + this.partSize - 1L) / this.partSize);
+		SortedMap<Integer, String> etags = new TreeMap<>();
+		List<Future<?>> futures = new ArrayList<>(count);
+		for (int part = 1; part <= count; part++) {
+			String etag = state.getProperty("part." + part);
+			if (Objects.nonNull(etag)) {
+				etags.put(part, etag);
+				continue;
+			}
+			final int partNumber = part;
+			final String id = uploadId;
+			futures.add(this.parts.submit(() -> {
+				String uploaded = this.uploadPart(_file, key, id, partNumber, size);
+				synchronized (state) {
+					etags.put(partNumber, uploaded);
+					state.setProperty("part." + partNumber, uploaded);
+					this.storeState(statePath, state);
+				}
+				return null;
+			}));
+		}
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			futures.forEach(f -> f.cancel(true));
+			if (e.getCause() instanceof S3Exception && ((S3Exception) e.getCause()).getStatusCode() == 404) {
+				LOG.log(Level.WARNING, "アップロードIDが無効、次回は最初からアップロード#" + key);
+				this.storeState(statePath, new Properties());
+			}
+			throw e;
+		}
+
+		this.client.completeMultipartUpload(key, uploadId, etags);
+		Files.deleteIfExists(statePath);
+		LOG.log(Level.INFO, "アップロード完了 パート数 = " + count + "#" + key);
+
+		RecordingPublishedEvent published = new RecordingPublishedEvent();
+		if (published.isEnabled()) {
+			published.file = _file.toString();
+			published.destination = key;
+			published.size = size;
+			published.commit();
+		}
+
+		if (this.deleteLocal) {
+			Files.deleteIfExists(_file);
+			LOG.log(Level.INFO, "アップロード済みの録音ファイルを削除#" + _file);
+		}
+		return _file;
+	}
+
+	/**
+	 * パートの読み取りとアップロード
+	 * @param _file 録音ファイル
+	 * @param _key オブジェクトキー
+	 * @param _uploadId アップロードID
+	 * @param _partNumber パート番号
+	 * @param _size 録音ファイルのサイズ
+	 * @return パートのETag
+	 * @throws IOException アップロード失敗
+	 * @throws InterruptedException アップロード中のスレッド割り込み
+	 */
+	private String uploadPart(Path _file, String _key, String _uploadId, int _partNumber, long _size) throws IOException, InterruptedException {
+		long offset = (long) (_partNumber - 1) * this.partSize;
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(this.partSize, _size - offset));
+		try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.READ)) {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0)
+					break;
+			}
+		}
+		byte[] data = buffer.array();
+
+		IOException cause = null;
+		for (int attempt = 0; attempt <= RETRY; attempt++) {
+			if (attempt > 0)
+				TimeUnit.SECONDS.sleep(1L << attempt);
+			while (this.busy.getAsBoolean()) {
+				LOG.log(Level.DEBUG, "録音中のためアップロード待機#" + _key);
+				TimeUnit.SECONDS.sleep(BUSY_WAIT_SECONDS);
+			}
+			try {
+				String etag = this.client.uploadPart(_key, _uploadId, _partNumber, data, this.limiter);
+				LOG.log(Level.DEBUG, "パートアップロード " + _partNumber + " " + data.length + "bytes#" + _key);
+				return etag;
+			} catch (S3Exception e) {
+				if (e.getStatusCode() / 100 == 4)
+					throw e;
+				cause = e;
+			} catch (IOException e) {
+				cause = e;
+			}
+			LOG.log(Level.WARNING, "パートアップロード失敗 " + _partNumber + "#" + _key, cause);
+		}
+		throw cause;
+	}
+
+	/**
+	 * 状態ファイルの読み取り<br>
+	 * 録音ファイルが変更されていた場合は最初からアップロード
+	 * @param _statePath 状態ファイル
+	 * @param _key オブジェクトキー
+	 * @param _size 録音ファイルのサイズ
+	 * @param _modified 録音ファイルの更新日時
+	 * @return アップロードの状態
+	 * @throws IOException 状態ファイルの読み取り失敗
+	 */
+	private Properties loadState(Path _statePath, String _key, long _size, long _modified) throws IOException {
+		Properties state = new Properties();
+		if (Files.exists(_statePath)) {
+			try (InputStream in = Files.newInputStream(_statePath)) {
+				state.load(in);
+			}
+			if (_key.equals(state.getProperty("key"))
+					&& String.valueOf(_size).equals(state.getProperty("size"))
+					&& String.valueOf(_modified).equals(state.getProperty("modified"))
+					&& String.valueOf(this.partSize).equals(state.getProperty("partSize"))) {
+				LOG.log(Level.INFO, "アップロード状態を復元#" + _statePath);
+				return state;
+			}
+			String uploadId = state.getProperty("uploadId");
+			if (Objects.nonNull(uploadId) && Objects.nonNull(state.getProperty("key"))) {
+				try {
+					this.client.abortMultipartUpload(state.getProperty("key"), uploadId);
+				} catch (IOException | InterruptedException e) {
+					LOG.log(Level.WARNING, "古いアップロードの中止に失敗#" + uploadId, e);
+				}
+			}
+			state.clear();
+		}
+		state.setProperty("key", _key);
+		state.setProperty("size", String.valueOf(_size));
+		state.setProperty("modified", String.valueOf(_modified));
+		state.setProperty("partSize", String.valueOf(this.partSize));
+		return state;
+	}
+
+	/**
+	 * 状態ファイルの書き込み
+	 * @param _statePath 状態ファイル
+	 * @param _state アップロードの状態
+	 * @throws IOException 状態ファイルの書き込み失敗
+	 */
+	private void storeState(Path _statePath, Properties _state) throws IOException {
+		Path temp = _statePath.resolveSibling(_statePath.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			_state.store(out, null);
+		}
+		Files.move(temp, _statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * 予約済みのアップロードの完了を待機
+	 * @param _timeout 待機時間
+	 * @param _unit 待機時間の単位
+	 * @return 全て完了した場合はtrue
+	 * @throws InterruptedException 待機中のスレッド割り込み
+	 */
+	public boolean await(long _timeout, TimeUnit _unit) throws InterruptedException {
+		this.files.shutdown();
+		return this.files.awaitTermination(_timeout, _unit);
+	}
+
+	/**
+	 * アップロードを中断<br>
+	 * 送信済みのパートは状態ファイルに残り、次回起動時に再開
+	 */
+	@Override
+	public void close() {
+		this.files.shutdownNow();
+		this.parts.shutdownNow();
+	}
+}
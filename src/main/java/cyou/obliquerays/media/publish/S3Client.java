@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.publish;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * S3互換オブジェクトストレージのマルチパートアップロードAPI<br>
+ * パス形式のURLとAWS署名バージョン4で送信するため、MinIOなどS3互換の実装にも対応
+ */
+public class S3Client {
+
+    /** 署名アルゴリズム */
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+
+    /** 署名の日時フォーマット */
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    /** 1リクエストのタイムアウト */
+    private static final Duration TIMEOUT = Duration.ofMinutes(5L);
+
+    /** レスポンスのUploadId */
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>(.+?)</UploadId>");
+
+    /** HTTPクライアント */
+	private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30L)).build();
+
+	/** エンドポイント */
+	private final URI endpoint;
+
+	/** リージョン */
+	private final String region;
+
+	/** バケット */
+	private final String bucket;
+
+	/** アクセスキー */
+	private final String accessKey;
+
+	/** シークレットキー */
+	private final String secretKey;
+
+	/** 署名日時の時計 */
+	private final Clock clock;
+
+	/**
+	 * コンストラクタ
+	 * @param _endpoint エンドポイント
+	 * @param _region リージョン
+	 * @param _bucket バケット
+	 * @param _accessKey アクセスキー
+	 * @param _secretKey シークレットキー
+	 */
+	public S3Client(URI _endpoint, String _region, String _bucket, String _accessKey, String _secretKey) {
+		this(_endpoint, _region, _bucket, _accessKey, _secretKey, Clock.systemUTC());
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param _endpoint エンドポイント
+	 * @param _region リージョン
+	 * @param _bucket バケット
+	 * @param _accessKey アクセスキー
+	 * @param _secretKey シークレットキー
+	 * @param _clock 署名日時の時計
+	 */
+	public S3Client(URI _endpoint, String _region, String _bucket, String _accessKey, String _secretKey, Clock _clock) {
+		this.endpoint = Objects.requireNonNull(_endpoint);
+		this.region = Objects.requireNonNull(_region);
+		this.bucket = Objects.requireNonNull(_bucket);
+		this.accessKey = Objects.requireNonNull(_accessKey);
+		this.secretKey = Objects.requireNonNull(_secretKey);
+		this.clock = Objects.requireNonNull(_clock);
+	}
+
+	/**
+	 * マルチパートアップロードの開始
+	 * @param _key オブジェクトキー
+	 * @return アップロードID
+	 * @throws IOException 送信失敗
+	 * @throws InterruptedException 送信中のスレッド割り込み
+	 */
+	public String createMultipartUpload(String _key) throws IOException, InterruptedException {
+		String body = this.send("POST", _key, Map.of("uploads", ""), new byte[0], null);
+		Matcher matcher = UPLOAD_ID.matcher(body);
+		if (!matcher.find())
+			throw new IOException("UploadIdが無いレスポンス#" + body);
+		return matcher.group(1);
+	}
+
+	/**
+	 * パートのアップロード<br>
+	 * Content-MD5とx-amz-content-sha256でサーバー側でも内容を検証
+	 * @param _key オブジェクトキー
+	 * @param _uploadId アップロードID
+	 * @param _partNumber パート番号
+	 * @param _data パートの内容
+	 * @return パートのETag
+	 * @throws IOException 送信失敗、もしくはETagとMD5の不一致
+	 * @throws InterruptedException 送信中のスレッド割り込み
+	 */
+	public String uploadPart(String _key, String _uploadId, int _partNumber, byte[] _data) throws IOException, InterruptedException {
+		return this.uploadPart(_key, _uploadId, _partNumber, _data, BandwidthLimiter.UNLIMITED);
+	}
+
+	/**
+	 * 送信帯域を制御したパートのアップロード<br>
+	 * Content-MD5とx-amz-content-sha256でサーバー側でも内容を検証
+	 * @param _key オブジェクトキー
+	 * @param _uploadId アップロードID
+	 * @param _partNumber パート番号
+	 * @param _data パートの内容
+	 * @param _limiter 送信帯域の上限、チャンクごとに待機
+	 * @return パートのETag
+	 * @throws IOException 送信失敗、もしくはETagとMD5の不一致
+	 * @throws InterruptedException 送信中のスレッド割り込み
+	 */
+	public String uploadPart(String _key, String _uploadId, int _partNumber, byte[] _data, BandwidthLimiter _limiter) throws IOException, InterruptedException {
+		byte[] md5 = digest("MD5", _data);
+		HttpResponse<String> response = this.request("PUT", _key,
+				Map.of("partNumber", String.valueOf(_partNumber), "uploadId", _uploadId), _data, Base64.getEncoder().encodeToString(md5), _limiter);
+		String etag = response.headers().firstValue("ETag")
+				.orElseThrow(() -> new IOException("ETagが無いレスポンス#" + _key + " part=" + _partNumber));
+		if (!etag.replace("\"", "").equalsIgnoreCase(HexFormat.of().formatHex(md5)))
+			throw new IOException("ETagとMD5の不一致#" + _key + " part=" + _partNumber + " " + etag);
+		return etag;
+	}
+
+	/**
+	 * マルチパートアップロードの完了
+	 * @param _key オブジェクトキー
+	 * @param _uploadId アップロードID
+	 * @param _etags パート番号とETagの一覧
+	 * @throws IOException 送信失敗
+	 * @throws InterruptedException 送信中のスレッド割り込み
+	 */
+	public void completeMultipartUpload(String _key, String _uploadId, SortedMap<Integer, String> _etags) throws IOException, InterruptedException {
+		StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+		_etags.forEach((part, etag) -> xml.append("<Part><PartNumber>").append(part)
+				.append("</PartNumber><ETag>").append(etag).append("</ETag></Part>"));
+		xml.append("</CompleteMultipartUpload>");
+		String body = this.send("POST", _key, Map.of("uploadId", _uploadId), xml.toString().getBytes(StandardCharsets.UTF_8), null);
+		if (body.contains("<Error>"))
+			throw new IOException("マルチパートアップロードの完了に失敗#" + body);
+	}
+
+	/**
+	 * マルチパートアップロードの中止
+	 * @param _key オブジェクトキー
+	 * @param _uploadId アップロードID
+	 * @throws IOException 送信失敗
+	 * @throws InterruptedException 送信中のスレッド割り込み
+	 */
+	public void abortMultipartUpload(String _key, String _uploadId) throws IOException, InterruptedException {
+		this.send("DELETE", _key, Map.of("uploadId", _uploadId), new byte[0], null);
+	}
+
+	/**
+	 * 署名付きリクエストの送信
+	 * @param _method HTTPメソッド
+	 * @param _key オブジェクトキー
+	 * @param _query クエリパラメータ
+	 * @param _body リクエストボディ
+	 * @param _contentMd5 Content-MD5、不要な場合はnull
+	 * @return レスポンスボディ
+	 * @throws IOException 送信失敗
+	 * @throws InterruptedException 送信中のスレッド割り込み
+	 */
+	private String send(String _method, String _key, Map<String, String> _query, byte[] _body, String _contentMd5) throws IOException, InterruptedException {
+		return this.request(_method, _key, _query, _body, _contentMd5, BandwidthLimiter.UNLIMITED).body();
+	}
+
+	/**
+	 * 署名付きリクエストの送信
+	 * @param _method HTTPメソッド
+	 * @param _key オブジェクトキー
+	 * @param _query クエリパラメータ
+	 * @param _body リクエストボディ
+	 * @param _contentMd5 Content-MD5、不要な場合はnull
+	 * @param _limiter 送信帯域の上限
+	 * @return レスポンス
+	 * @throws IOException 送信失敗、もしくは2xx以外のステータス
+	 * @throws InterruptedException 送信中のスレッド割り込み
+	 */
+	private HttpResponse<String> request(String _method, String _key, Map<String, String> _query, byte[] _body, String _contentMd5,
+			BandwidthLimiter _limiter) throws IOException, InterruptedException {
+		String path = this.endpoint.getRawPath().replaceAll("/+$", "") + "/" + encode(this.bucket) + "/"
+				+ Pattern.compile("/").splitAsStream(_key).map(S3Client::encode).collect(Collectors.joining("/"));
+		String query = new TreeMap<>(_query).entrySet().stream()
+				.map(e -> encode(e.getKey()) + "=" + encode(e.getValue()))
+				.collect(Collectors.joining("&"));
+		String host = this.endpoint.getPort() < 0 ? this.endpoint.getHost() : this.endpoint.getHost() + ":" + this.endpoint.getPort();
+		String amzDate = ZonedDateTime.now(this.clock.withZone(ZoneOffset.UTC)).format(AMZ_DATE);
+		String payloadHash = HexFormat.of().formatHex(digest("SHA-256", _body));
+
+		SortedMap<String, String> headers = new TreeMap<>();
+		headers.put("host", host);
+		headers.put("x-amz-content-sha256", payloadHash);
+		headers.put("x-amz-date", amzDate);
+		if (Objects.nonNull(_contentMd5))
+			headers.put("content-md5", _contentMd5);
+
+		HttpRequest.BodyPublisher body = _limiter == BandwidthLimiter.UNLIMITED
+				? HttpRequest.BodyPublishers.ofByteArray(_body)
+				: HttpRequest.BodyPublishers.fromPublisher(
+						HttpRequest.BodyPublishers.ofInputStream(() -> _limiter.limit(new ByteArrayInputStream(_body))), _body.length);
+		HttpRequest.Builder builder = HttpRequest.newBuilder(
+				URI.create(this.endpoint.getScheme() + "://" + host + path + (query.isEmpty() ? "" : "?" + query)))
+				.timeout(TIMEOUT)
+				.method(_method, body)
+				.header("x-amz-content-sha256", payloadHash)
+				.header("x-amz-date", amzDate)
+				.header("Authorization", this.authorization(_method, path, query, headers));
+		if (Objects.nonNull(_contentMd5))
+			builder.header("Content-MD5", _contentMd5);
+
+		HttpResponse<String> response = this.client.send(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+		if (response.statusCode() / 100 != 2)
+			throw new S3Exception(response.statusCode(), _method + " " + path + "?" + query + " " + response.body());
+		return response;
+	}
+
+	/**
+	 * AWS署名バージョン4のAuthorizationヘッダー
+	 * @param _method HTTPメソッド
+	 * @param _path URIエンコード済みのパス
+	 * @param _query URIエンコード済みでキー順のクエリ文字列
+	 * @param _headers 署名するヘッダー、小文字のヘッダー名順でx-amz-dateとx-amz-content-sha256を含む
+	 * @return Authorizationヘッダーの値
+	 */
+	String authorization(String _method, String _path, String _query, SortedMap<String, String> _headers) {
+		String amzDate = _headers.get("x-amz-date");
+		String date = amzDate.substring(0, 8);
+		String signedHeaders = String.join(";", _headers.keySet());
+		String canonicalRequest = new StringBuilder(_method).append('\n')
+				.append(_path).append('\n')
+				.append(_query).append('\n')
+				.append(_headers.entrySet().stream().map(e -> e.getKey() + ":" + e.getValue() + "\n").collect(Collectors.joining())).append('\n')
+				.append(signedHeaders).append('\n')
+				.append(_headers.get("x-amz-content-sha256")).toString();
+		String scope = date + "/" + this.region + "/s3/aws4_request";
+		String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+				+ HexFormat.of().formatHex(digest("SHA-256", canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+		byte[] key = hmac(("AWS4" + this.secretKey).getBytes(StandardCharsets.UTF_8), date);
+		key = hmac(key, this.region);
+		key = hmac(key, "s3");
+		key = hmac(key, "aws4_request");
+		String signature = HexFormat.of().formatHex(hmac(key, stringToSign));
+		return ALGORITHM + " Credential=" + this.accessKey + "/" + scope
+				+ ", SignedHeaders=" + signedHeaders + ", Signature=" + signature;
+	}
+
+	/**
+	 * URIエンコード（RFC 3986）
+	 * @param _value エンコードする文字列
+	 * @return エンコード結果
+	 */
+	private static String encode(String _value) {
+		return URLEncoder.encode(_value, StandardCharsets.UTF_8)
+				.replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+	}
+
+	/**
+	 * ハッシュ値の計算
+	 * @param _algorithm アルゴリズム
+	 * @param _data 計算対象
+	 * @return ハッシュ値
+	 */
+	private static byte[] digest(String _algorithm, byte[] _data) {
+		try {
+			return MessageDigest.getInstance(_algorithm).digest(_data);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * HMAC-SHA256の計算
+	 * @param _key 鍵
+	 * @param _data 計算対象
+	 * @return HMAC
+	 */
+	private static byte[] hmac(byte[] _key, String _data) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(_key, "HmacSHA256"));
+			return mac.doFinal(_data.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException | InvalidKeyException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.publish;
+
+import java.io.IOException;
+
+/**
+ * S3互換オブジェクトストレージのエラーレスポンス
+ */
+public class S3Exception extends IOException {
+
+	/** シリアルバージョンUID */
+	private static final long serialVersionUID = 1L;
+
+	/** HTTPステータス */
+	private final int statusCode;
+
+	/**
+	 * コンストラクタ
+	 * @param _statusCode HTTPステータス
+	 * @param _message エラー内容
+	 */
+	public S3Exception(int _statusCode, String _message) {
+		super("HTTPステータス " + _statusCode + "#" + _message);
+		this.statusCode = _statusCode;
+	}
+
+	/** @return HTTPステータス */
+	public int getStatusCode() {
+		return this.statusCode;
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * 録音ファイルを外部へ公開するパッケージ
+ */
+package cyou.obliquerays.media.publish;
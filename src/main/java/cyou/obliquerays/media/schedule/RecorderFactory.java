@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.concurrent.Callable;
+
+/**
+ * 録音処理の生成
+ */
+@FunctionalInterface
+public interface RecorderFactory {
+
+	/**
+	 * 録音処理の生成
+	 * @param _slot 録音枠
+	 * @param _clock 録音開始日時を決める時計
+	 * @return 録音したファイルを返す録音処理
+	 */
+	Callable<Path> create(RecordingSlot _slot, Clock _clock);
+}
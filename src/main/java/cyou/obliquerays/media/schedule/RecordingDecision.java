@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * 録音予定の判定結果<br>
+ * 録音を始める録音枠、もしくは次の判定までの待機時間
+ */
+public final class RecordingDecision {
+
+	/** 録音を始める録音枠、待機の場合はnull */
+	private final RecordingSlot slot;
+
+	/** 次の判定までの待機時間 */
+	private final Duration wait;
+
+	/**
+	 * コンストラクタ
+	 * @param _slot 録音を始める録音枠、待機の場合はnull
+	 * @param _wait 次の判定までの待機時間
+	 */
+	private RecordingDecision(RecordingSlot _slot, Duration _wait) {
+		this.slot = _slot;
+		this.wait = _wait;
+	}
+
+	/**
+	 * 録音開始の判定
+	 * @param _slot 録音を始める録音枠
+	 * @return 判定結果
+	 */
+	static RecordingDecision record(RecordingSlot _slot) {
+		return new RecordingDecision(Objects.requireNonNull(_slot), Duration.ZERO);
+	}
+
+	/**
+	 * 待機の判定
+	 * @param _wait 次の判定までの待機時間
+	 * @return 判定結果
+	 */
+	static RecordingDecision await(Duration _wait) {
+		return new RecordingDecision(null, _wait);
+	}
+
+	/** @return 録音を始める場合はtrue */
+	public boolean isRecord() {
+		return Objects.nonNull(this.slot);
+	}
+
+	/** @return 録音を始める録音枠、待機の場合はnull */
+	public RecordingSlot getSlot() {
+		return this.slot;
+	}
+
+	/** @return 次の判定までの待機時間 */
+	public Duration getWait() {
+		return this.wait;
+	}
+
+	@Override
+	public String toString() {
+		return this.isRecord() ? "RecordingDecision[record " + this.slot + "]" : "RecordingDecision[wait " + this.wait + "]";
+	}
+}
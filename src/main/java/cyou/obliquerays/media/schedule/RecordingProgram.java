@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 毎週の録音番組<br>
+ * 終了時間が開始時間以前の場合は日付をまたぐ番組
+ */
+public final class RecordingProgram {
+
+	/** 録音時間の上限、終了時間の設定誤りで一日中録音しない */
+	public static final Duration MAX_DURATION = Duration.ofHours(12L);
+
+	/** 番組名 */
+	private final String title;
+
+	/** 録音ファイル名の[prefix] */
+	private final String filePrefix;
+
+	/** 放送開始の曜日 */
+	private final Set<DayOfWeek> dayOfWeeks;
+
+	/** 録音開始時間 */
+	private final LocalTime start;
+
+	/** 録音終了時間 */
+	private final LocalTime end;
+
+	/**
+	 * コンストラクタ、録音ファイル名の[prefix]は番組名
+	 * @param _title 番組名
+	 * @param _dayOfWeeks 放送開始の曜日
+	 * @param _start 録音開始時間
+	 * @param _end 録音終了時間、開始時間以前の場合は翌日
+	 * @throws IllegalArgumentException 録音時間が{@link #MAX_DURATION}より長い
+	 */
+	public RecordingProgram(String _title, Set<DayOfWeek> _dayOfWeeks, LocalTime _start, LocalTime _end) {
+		this(_title, _title, _dayOfWeeks, _start, _end);
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param _title 番組名
+	 * @param _filePrefix 録音ファイル名の[prefix]
+	 * @param _dayOfWeeks 放送開始の曜日
+	 * @param _start 録音開始時間
+	 * @param _end 録音終了時間、開始時間以前の場合は翌日
+	 * @throws IllegalArgumentException 録音時間が{@link #MAX_DURATION}より長い
+	 */
+	public RecordingProgram(String _title, String _filePrefix, Set<DayOfWeek> _dayOfWeeks, LocalTime _start, LocalTime _end) {
+		this.title = Objects.requireNonNull(_title);
+		this.filePrefix = Objects.requireNonNull(_filePrefix);
+		this.dayOfWeeks = Collections.unmodifiableSet(_dayOfWeeks.isEmpty() ? EnumSet.noneOf(DayOfWeek.class) : EnumSet.copyOf(_dayOfWeeks));
+		this.start = Objects.requireNonNull(_start);
+		this.end = Objects.requireNonNull(_end);
+		if (this.getDuration().compareTo(MAX_DURATION) > 0)
+			throw new IllegalArgumentException("録音時間が" + MAX_DURATION.toHours() + "時間を超過#" + this);
+	}
+
+	/** @return 番組名 */
+	public String getTitle() {
+		return this.title;
+	}
+
+	/** @return 録音ファイル名の[prefix] */
+	public String getFilePrefix() {
+		return this.filePrefix;
+	}
+
+	/** @return 放送開始の曜日 */
+	public Set<DayOfWeek> getDayOfWeeks() {
+		return this.dayOfWeeks;
+	}
+
+	/** @return 録音開始時間 */
+	public LocalTime getStart() {
+		return this.start;
+	}
+
+	/** @return 録音終了時間 */
+	public LocalTime getEnd() {
+		return this.end;
+	}
+
+	/** @return 録音時間、日付をまたぐ場合は翌日の終了時間まで */
+	public Duration getDuration() {
+		Duration duration = Duration.between(this.start, this.end);
+		return duration.isNegative() || duration.isZero() ? duration.plusDays(1L) : duration;
+	}
+
+	/**
+	 * 放送日の録音枠
+	 * @param _date 放送開始日
+	 * @return 録音枠
+	 */
+	public RecordingSlot slotOn(LocalDate _date) {
+		LocalDateTime slotStart = _date.atTime(this.start);
+		return new RecordingSlot(this, slotStart, slotStart.plus(this.getDuration()));
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("RecordingProgram[").append(this.title)
+				.append(", ").append(this.dayOfWeeks)
+				.append(", ").append(this.start)
+				.append("-").append(this.end).append("]").toString();
+	}
+}
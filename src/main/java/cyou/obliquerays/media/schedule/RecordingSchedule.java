@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 毎週の録音予定と日時の決まった録音予定<br>
+ * 毎週の録音番組は週の先頭からの秒数、日時の決まった録音枠は録音開始日時で索引し、次に録音する枠を判定する
+ */
+public final class RecordingSchedule {
+
+	/** 録音開始時間より前に録音を始める時間 */
+	public static final Duration LEAD = Duration.ofMinutes(2L);
+
+	/** 録音終了時間の直前で録音を始めない時間 */
+	public static final Duration TAIL = Duration.ofMinutes(1L);
+
+	/** 判定の最大待機時間 */
+	public static final Duration MAX_WAIT = Duration.ofHours(1L);
+
+	/** 一週間の秒数 */
+	private static final long WEEK = ChronoUnit.WEEKS.getDuration().getSeconds();
+
+	/** 録音番組 */
+	private final List<RecordingProgram> programs;
+
+	/** 週の先頭からの録音開始秒数と録音番組 */
+	private final NavigableMap<Long, List<RecordingProgram>> index = new TreeMap<>();
+
+	/** 最長の録音時間の秒数 */
+	private final long maxDuration;
+
+	/** 録音開始日時と日時の決まった録音枠 */
+	private final NavigableMap<LocalDateTime, List<RecordingSlot>> slots = new TreeMap<>();
+
+	/** 日時の決まった録音枠の最長の録音時間の秒数 */
+	private final long maxSlotDuration;
+
+	/**
+	 * コンストラクタ
+	 * @param _programs 毎週の録音番組
+	 */
+	public RecordingSchedule(Collection<RecordingProgram> _programs) {
+		this(_programs, List.of());
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param _programs 毎週の録音番組
+	 * @param _slots 日時の決まった録音枠
+	 */
+	public RecordingSchedule(Collection<RecordingProgram> _programs, Collection<RecordingSlot> _slots) {
+		this.programs = List.copyOf(_programs);
+		long max = 0L;
+		for (RecordingProgram program : this.programs) {
+			long startOfDay = program.getStart().toSecondOfDay();
+			for (DayOfWeek dayOfWeek : program.getDayOfWeeks()) {
+				long key = (dayOfWeek.getValue() - 1L) * 86400L + startOfDay;
+				this.index.computeIfAbsent(Long.valueOf(key), k -> new ArrayList<>()).add(program);
+			}
+			max = Math.max(max, program.getDuration().getSeconds());
+		}
+		this.index.values().forEach(list -> list.sort(Comparator.comparing(RecordingProgram::getTitle)));
+		this.maxDuration = max;
+
+		long maxSlot = 0L;
+		for (RecordingSlot slot : _slots) {
+			this.slots.computeIfAbsent(slot.getStart(), k -> new ArrayList<>()).add(slot);
+			maxSlot = Math.max(maxSlot, Duration.between(slot.getStart(), slot.getEnd()).getSeconds());
+		}
+		this.slots.values().forEach(list -> list.sort(Comparator.comparing(slot -> slot.getProgram().getTitle())));
+		this.maxSlotDuration = maxSlot;
+	}
+
+	/** @return 毎週の録音番組 */
+	public List<RecordingProgram> getPrograms() {
+		return this.programs;
+	}
+
+	/** @return 録音開始日時順の日時の決まった録音枠 */
+	public List<RecordingSlot> getSlots() {
+		return this.slots.values().stream().flatMap(List::stream).toList();
+	}
+
+	/**
+	 * 次に録音する枠の判定<br>
+	 * 録音開始時間の{@link #LEAD}前から録音終了時間の{@link #TAIL}前までは録音、それ以外は次の録音まで待機<br>
+	 * 録音完了した枠を除くため、録音に失敗した枠は録音終了時間の{@link #TAIL}前まで再び判定され、開始時間の同じ番組も順に判定される
+	 * @param _now 現在日時
+	 * @param _done 録音完了した録音枠
+	 * @return 判定結果
+	 */
+	public RecordingDecision decide(LocalDateTime _now, Set<RecordingSlot> _done) {
+		RecordingSlot slot = this.next(_now, _done);
+		if (Objects.isNull(slot)) {
+			return RecordingDecision.await(MAX_WAIT);
+		}
+		LocalDateTime begin = slot.getStart().minus(LEAD);
+		if (begin.isAfter(_now)) {
+			Duration wait = Duration.between(_now, begin);
+			return RecordingDecision.await(wait.compareTo(MAX_WAIT) > 0 ? MAX_WAIT : wait);
+		}
+		return RecordingDecision.record(slot);
+	}
+
+	/**
+	 * 録音完了していない最も早い録音枠
+	 * @param _now 現在日時
+	 * @param _done 録音完了した録音枠
+	 * @return 録音枠、該当しない場合はnull
+	 */
+	RecordingSlot next(LocalDateTime _now, Set<RecordingSlot> _done) {
+		RecordingSlot weekly = this.nextWeekly(_now, _done);
+		RecordingSlot fixed = this.nextFixed(_now, _done);
+		if (Objects.isNull(weekly)) {
+			return fixed;
+		} else if (Objects.isNull(fixed)) {
+			return weekly;
+		}
+		return fixed.getStart().isBefore(weekly.getStart()) ? fixed : weekly;
+	}
+
+	/**
+	 * 録音完了していない最も早い日時の決まった録音枠
+	 * @param _now 現在日時
+	 * @param _done 録音完了した録音枠
+	 * @return 録音枠、該当しない場合はnull
+	 */
+	private RecordingSlot nextFixed(LocalDateTime _now, Set<RecordingSlot> _done) {
+		LocalDateTime from = _now.minusSeconds(this.maxSlotDuration);
+		for (List<RecordingSlot> list : this.slots.tailMap(from, true).values()) {
+			for (RecordingSlot slot : list) {
+				if (slot.getEnd().minus(TAIL).isAfter(_now) && !_done.contains(slot)) {
+					return slot;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 録音完了していない最も早い毎週の録音枠
+	 * @param _now 現在日時
+	 * @param _done 録音完了した録音枠
+	 * @return 録音枠、該当しない場合はnull
+	 */
+	private RecordingSlot nextWeekly(LocalDateTime _now, Set<RecordingSlot> _done) {
+		if (this.index.isEmpty()) {
+			return null;
+		}
+		LocalDateTime weekStart = _now.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+		long from = Duration.between(weekStart, _now).getSeconds() - this.maxDuration;
+		long firstWeek = Math.floorDiv(from, WEEK);
+		for (long week = firstWeek; week <= firstWeek + 2L; week++) {
+			long offset = week * WEEK;
+			for (Map.Entry<Long, List<RecordingProgram>> entry : this.index.tailMap(Long.valueOf(Math.max(from - offset, 0L)), true).entrySet()) {
+				LocalDateTime start = weekStart.plusSeconds(offset + entry.getKey().longValue());
+				for (RecordingProgram program : entry.getValue()) {
+					LocalDateTime end = start.plus(program.getDuration());
+					if (end.minus(TAIL).isAfter(_now)) {
+						RecordingSlot slot = new RecordingSlot(program, start, end);
+						if (!_done.contains(slot)) {
+							return slot;
+						}
+					}
+				}
+			}
+		}
+		return null;
+	}
+}
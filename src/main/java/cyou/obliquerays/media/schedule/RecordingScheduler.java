@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cyou.obliquerays.media.config.RadioProperties;
+import cyou.obliquerays.media.jfr.RecordingPrewarmedEvent;
+import cyou.obliquerays.media.jfr.RecordingScheduledEvent;
+
+/**
+ * 録音予定の判定と録音処理の実行<br>
+ * 常時起動の録音と{@link ScheduleSimulator}の模擬実行で同じ処理を使い、録音完了した枠だけを除いて次の録音枠を判定する
+ */
+public final class RecordingScheduler {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(RecordingScheduler.class.getName());
+
+	/** 録音失敗から再試行までの待機時間 */
+	public static final Duration RETRY_WAIT = Duration.ofSeconds(30L);
+
+	/** 録音予定、差し替え時に待機中の判定へ通知 */
+	private final AtomicReference<RecordingSchedule> schedule;
+
+	/** 録音開始日時を決める時計 */
+	private final Clock clock;
+
+	/** 録音処理の生成 */
+	private final RecorderFactory factory;
+
+	/** 録音処理の実行 */
+	private final Executor executor;
+
+	/** 録音完了した録音枠、録音終了日時を過ぎたら削除 */
+	private final Set<RecordingSlot> done = new HashSet<>();
+
+	/** 録音中の場合はtrue */
+	private final AtomicBoolean recording = new AtomicBoolean(false);
+
+	/**
+	 * コンストラクタ
+	 * @param _schedule 録音予定
+	 * @param _clock 録音開始日時を決める時計、{@link SimulatedClock}の場合は待機せずに時計を進める
+	 * @param _factory 録音処理の生成
+	 * @param _executor 録音処理の実行
+	 */
+	public RecordingScheduler(RecordingSchedule _schedule, Clock _clock, RecorderFactory _factory, Executor _executor) {
+		this.schedule = new AtomicReference<>(Objects.requireNonNull(_schedule));
+		this.clock = Objects.requireNonNull(_clock);
+		this.factory = Objects.requireNonNull(_factory);
+		this.executor = Objects.requireNonNull(_executor);
+	}
+
+	/** @return 録音予定 */
+	public RecordingSchedule getSchedule() {
+		return this.schedule.get();
+	}
+
+	/**
+	 * 録音予定を差し替えて待機中の判定へ通知<br>
+	 * 録音中の処理は待たずに次の判定から反映
+	 * @param _schedule 録音予定
+	 */
+	public void setSchedule(RecordingSchedule _schedule) {
+		synchronized (this.schedule) {
+			this.schedule.set(Objects.requireNonNull(_schedule));
+			this.schedule.notifyAll();
+		}
+	}
+
+	/** @return 録音中の場合はtrue */
+	public boolean isRecording() {
+		return this.recording.get();
+	}
+
+	/**
+	 * 次の録音枠を判定して待機もしくは録音<br>
+	 * 録音処理が例外で終了した枠は録音完了とせず、{@link #RETRY_WAIT}後に録音終了時間の{@link RecordingSchedule#TAIL}前まで再試行
+	 * @return 録音完了したファイル、待機した場合と録音失敗の場合はnull
+	 * @throws InterruptedException 待機中もしくは録音中の割り込み
+	 */
+	public Path step() throws InterruptedException {
+		RecordingDecision decision;
+		synchronized (this.schedule) {
+			decision = this.schedule.get().decide(LocalDateTime.now(this.clock), this.done);
+			if (!decision.isRecord()) {
+				LOG.log(Level.DEBUG, "待機#" + decision.getWait());
+				this.await(decision.getWait());
+				return null;
+			}
+		}
+
+		RecordingSlot slot = decision.getSlot();
+		FutureTask<Path> recorder;
+		try {
+			recorder = new FutureTask<>(this.factory.create(slot, this.clock));
+		} catch (RuntimeException e) {
+			LOG.log(Level.ERROR, "録音処理の生成に失敗#" + slot, e);
+			this.retry();
+			return null;
+		}
+		LocalDateTime now = LocalDateTime.now(this.clock);
+		RecordingPrewarmedEvent prewarmed = new RecordingPrewarmedEvent();
+		if (prewarmed.isEnabled() && now.isBefore(slot.getStart())) {
+			prewarmed.file = RadioProperties.getProperties().getMp3FilePath(slot.getStart().toLocalDate(), slot.getProgram().getFilePrefix()).toString();
+			prewarmed.start = slot.getStart().toString();
+			prewarmed.lead = Duration.between(now, slot.getStart()).toNanos();
+			prewarmed.commit();
+		}
+		RecordingScheduledEvent scheduled = new RecordingScheduledEvent();
+		if (scheduled.isEnabled()) {
+			scheduled.file = RadioProperties.getProperties().getMp3FilePath(slot.getStart().toLocalDate(), slot.getProgram().getFilePrefix()).toString();
+			scheduled.start = slot.getStart().toString();
+			scheduled.end = slot.getEnd().toString();
+			scheduled.commit();
+		}
+		this.recording.set(true);
+		try {
+			this.executor.execute(recorder);
+			Path path = recorder.get();
+			LocalDateTime end = LocalDateTime.now(this.clock);
+			this.done.removeIf(s -> s.getEnd().isBefore(end));
+			this.done.add(slot);
+			return path;
+		} catch (ExecutionException e) {
+			LOG.log(Level.ERROR, "録音失敗、録音終了時間まで再試行#" + slot, e.getCause());
+			this.retry();
+			return null;
+		} finally {
+			this.recording.set(false);
+		}
+	}
+
+	/**
+	 * 録音失敗から再試行まで待機、待機中に録音予定が差し替えられた場合は即座に再判定
+	 * @throws InterruptedException 待機中の割り込み
+	 */
+	private void retry() throws InterruptedException {
+		synchronized (this.schedule) {
+			this.await(RETRY_WAIT);
+		}
+	}
+
+	/**
+	 * 次の判定まで待機、模擬時計の場合は待機せずに時計を進める<br>
+	 * {@link #schedule}のロックを取得して呼び出す
+	 * @param _wait 待機時間
+	 * @throws InterruptedException 待機中の割り込み
+	 */
+	private void await(Duration _wait) throws InterruptedException {
+		if (this.clock instanceof SimulatedClock simulated) {
+			simulated.advance(_wait);
+		} else {
+			this.schedule.wait(Math.max(1L, _wait.toMillis()));
+		}
+	}
+}
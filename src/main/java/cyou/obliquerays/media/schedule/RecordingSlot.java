@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * 日時の決まった録音枠
+ */
+public final class RecordingSlot {
+
+	/** 録音番組 */
+	private final RecordingProgram program;
+
+	/** 録音開始日時 */
+	private final LocalDateTime start;
+
+	/** 録音終了日時 */
+	private final LocalDateTime end;
+
+	/**
+	 * コンストラクタ
+	 * @param _program 録音番組
+	 * @param _start 録音開始日時
+	 * @param _end 録音終了日時
+	 */
+	public RecordingSlot(RecordingProgram _program, LocalDateTime _start, LocalDateTime _end) {
+		this.program = Objects.requireNonNull(_program);
+		this.start = Objects.requireNonNull(_start);
+		this.end = Objects.requireNonNull(_end);
+	}
+
+	/** @return 録音番組 */
+	public RecordingProgram getProgram() {
+		return this.program;
+	}
+
+	/** @return 録音開始日時 */
+	public LocalDateTime getStart() {
+		return this.start;
+	}
+
+	/** @return 録音終了日時 */
+	public LocalDateTime getEnd() {
+		return this.end;
+	}
+
+	/**
+	 * 録音時間<br>
+	 * 開始日時より前に録音を始めた場合は枠の長さ、遅れて始めた場合は終了日時まで
+	 * @param _now 録音を始める日時
+	 * @return 録音時間
+	 */
+	public Duration getDuration(LocalDateTime _now) {
+		return Duration.between(_now.isAfter(this.start) ? _now : this.start, this.end);
+	}
+
+	/** 番組名と録音開始日時、録音終了日時が同じ録音枠は等価 */
+	@Override
+	public boolean equals(Object _obj) {
+		if (this == _obj)
+			return true;
+		if (!(_obj instanceof RecordingSlot))
+			return false;
+		RecordingSlot other = (RecordingSlot) _obj;
+		return this.program.getTitle().equals(other.program.getTitle())
+				&& this.start.equals(other.start) && this.end.equals(other.end);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.program.getTitle(), this.start, this.end);
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("RecordingSlot[").append(this.program.getTitle())
+				.append(", ").append(this.start)
+				.append(" - ").append(this.end).append("]").toString();
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * 録音予定の模擬実行<br>
+ * {@link SimulatedClock}を進めながら常時起動の録音と同じ{@link RecordingScheduler#step()}を繰り返し、判定結果と判定時間を集計する
+ */
+public final class ScheduleSimulator {
+
+	/** 録音予定 */
+	private final RecordingSchedule schedule;
+
+	/** 模擬時計 */
+	private final SimulatedClock clock;
+
+	/** 模擬実行の終了日時 */
+	private final LocalDateTime until;
+
+	/** 録音処理の生成 */
+	private final RecorderFactory factory;
+
+	/**
+	 * コンストラクタ
+	 * @param _schedule 録音予定
+	 * @param _clock 模擬時計、開始日時に合わせておく
+	 * @param _until 模擬実行の終了日時
+	 * @param _factory 録音処理の生成、模擬時計を進めない録音処理の場合は録音時間だけ進める
+	 */
+	public ScheduleSimulator(RecordingSchedule _schedule, SimulatedClock _clock, LocalDateTime _until, RecorderFactory _factory) {
+		this.schedule = Objects.requireNonNull(_schedule);
+		this.clock = Objects.requireNonNull(_clock);
+		this.until = Objects.requireNonNull(_until);
+		this.factory = Objects.requireNonNull(_factory);
+	}
+
+	/**
+	 * 模擬実行<br>
+	 * 常時起動の録音と同じ{@link RecordingScheduler}を呼び出しスレッドで実行し、録音処理の前後で遅延と日付またぎを集計
+	 * @return 模擬実行の結果
+	 * @throws InterruptedException 模擬実行中の割り込み
+	 */
+	public Report run() throws InterruptedException {
+		LocalDateTime from = LocalDateTime.now(this.clock);
+		Set<String> recorded = new HashSet<>();
+		int[] late = {0};
+		int[] crossings = {0};
+		long[] recording = {0L};
+		RecorderFactory observed = (slot, c) -> {
+			Callable<Path> recorder = this.factory.create(slot, c);
+			return () -> {
+				long t = System.nanoTime();
+				LocalDateTime now = LocalDateTime.now(c);
+				if (now.isAfter(slot.getStart())) {
+					late[0]++;
+				}
+				if (!slot.getEnd().toLocalDate().equals(slot.getStart().toLocalDate())) {
+					crossings[0]++;
+				}
+				try {
+					Path path = Objects.requireNonNull(recorder.call());
+					if (!LocalDateTime.now(c).isAfter(now)) {
+						this.clock.advance(slot.getDuration(now));
+					}
+					recorded.add(key(slot));
+					return path;
+				} finally {
+					recording[0] += System.nanoTime() - t;
+				}
+			};
+		};
+		RecordingScheduler scheduler = new RecordingScheduler(this.schedule, this.clock, observed, Runnable::run);
+		long[] latencies = new long[1024];
+		int decisions = 0;
+		long begin = System.nanoTime();
+		while (LocalDateTime.now(this.clock).isBefore(this.until)) {
+			recording[0] = 0L;
+			long t = System.nanoTime();
+			scheduler.step();
+			if (decisions == latencies.length) {
+				latencies = Arrays.copyOf(latencies, decisions * 2);
+			}
+			latencies[decisions++] = System.nanoTime() - t - recording[0];
+		}
+		long elapsed = System.nanoTime() - begin;
+		int missed = 0;
+		for (LocalDate date = from.toLocalDate().minusDays(1L); !date.isAfter(this.until.toLocalDate()); date = date.plusDays(1L)) {
+			for (RecordingProgram program : this.schedule.getPrograms()) {
+				if (!program.getDayOfWeeks().contains(date.getDayOfWeek())) {
+					continue;
+				}
+				RecordingSlot slot = program.slotOn(date);
+				if (slot.getStart().isBefore(from) || !slot.getStart().isBefore(this.until)) {
+					continue;
+				}
+				if (!recorded.contains(key(slot))) {
+					missed++;
+				}
+			}
+		}
+		for (RecordingSlot slot : this.schedule.getSlots()) {
+			if (!slot.getStart().isBefore(from) && slot.getStart().isBefore(this.until) && !recorded.contains(key(slot))) {
+				missed++;
+			}
+		}
+		long[] sorted = Arrays.copyOf(latencies, decisions);
+		Arrays.sort(sorted);
+		return new Report(decisions, recorded.size(), late[0], missed, crossings[0], sorted, elapsed);
+	}
+
+	/**
+	 * 判定時間の計測用に乱数で録音番組を生成<br>
+	 * 5分単位の開始時間と5分～3時間の録音時間で、日付をまたぐ番組と重なる番組を含む
+	 * @param _count 番組数
+	 * @param _seed 乱数の種
+	 * @return 録音番組
+	 */
+	public static List<RecordingProgram> randomPrograms(int _count, long _seed) {
+		Random random = new Random(_seed);
+		List<RecordingProgram> programs = new ArrayList<>(_count);
+		for (int i = 0; i < _count; i++) {
+			Set<DayOfWeek> dayOfWeeks = EnumSet.noneOf(DayOfWeek.class);
+			int mask = 1 + random.nextInt(127);
+			for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+				if ((mask & (1 << dayOfWeek.ordinal())) != 0) {
+					dayOfWeeks.add(dayOfWeek);
+				}
+			}
+			LocalTime start = LocalTime.MIDNIGHT.plusMinutes(5L * random.nextInt(288));
+			LocalTime end = start.plusMinutes(5L * (1 + random.nextInt(36)));
+			programs.add(new RecordingProgram("program" + i, dayOfWeeks, start, end));
+		}
+		return programs;
+	}
+
+	/**
+	 * 録音枠の識別子
+	 * @param _slot 録音枠
+	 * @return 番組名と録音開始日時
+	 */
+	private static String key(RecordingSlot _slot) {
+		return _slot.getProgram().getTitle() + "@" + _slot.getStart();
+	}
+
+	/**
+	 * 模擬実行の結果
+	 */
+	public static final class Report {
+
+		/** 判定回数 */
+		private final int decisions;
+
+		/** 録音回数 */
+		private final int recordings;
+
+		/** 録音開始時間より遅れて始めた録音回数 */
+		private final int late;
+
+		/** 録音できなかった録音枠の数 */
+		private final int missed;
+
+		/** 日付をまたいだ録音回数 */
+		private final int midnightCrossings;
+
+		/** 昇順の判定時間（ナノ秒） */
+		private final long[] latencies;
+
+		/** 模擬実行の経過時間（ナノ秒） */
+		private final long elapsed;
+
+		/**
+		 * コンストラクタ
+		 * @param _decisions 判定回数
+		 * @param _recordings 録音回数
+		 * @param _late 録音開始時間より遅れて始めた録音回数
+		 * @param _missed 録音できなかった録音枠の数
+		 * @param _midnightCrossings 日付をまたいだ録音回数
+		 * @param _latencies 昇順の判定時間（ナノ秒）
+		 * @param _elapsed 模擬実行の経過時間（ナノ秒）
+		 */
+		private Report(int _decisions, int _recordings, int _late, int _missed, int _midnightCrossings, long[] _latencies, long _elapsed) {
+			this.decisions = _decisions;
+			this.recordings = _recordings;
+			this.late = _late;
+			this.missed = _missed;
+			this.midnightCrossings = _midnightCrossings;
+			this.latencies = _latencies;
+			this.elapsed = _elapsed;
+		}
+
+		/** @return 判定回数 */
+		public int getDecisions() {
+			return this.decisions;
+		}
+
+		/** @return 録音回数 */
+		public int getRecordings() {
+			return this.recordings;
+		}
+
+		/** @return 録音開始時間より遅れて始めた録音回数 */
+		public int getLate() {
+			return this.late;
+		}
+
+		/** @return 録音できなかった録音枠の数 */
+		public int getMissed() {
+			return this.missed;
+		}
+
+		/** @return 日付をまたいだ録音回数 */
+		public int getMidnightCrossings() {
+			return this.midnightCrossings;
+		}
+
+		/**
+		 * 判定時間の百分位数
+		 * @param _percentile 百分位（0～100）
+		 * @return 判定時間
+		 */
+		public Duration getLatency(double _percentile) {
+			if (this.latencies.length == 0) {
+				return Duration.ZERO;
+			}
+			int i = (int) Math.ceil(_percentile / 100d * this.latencies.length) - 1;
+			return Duration.ofNanos(this.latencies[Math.min(Math.max(i, 0), this.latencies.length - 1)]);
+		}
+
+		/** @return 模擬実行の経過時間 */
+		public Duration getElapsed() {
+			return Duration.ofNanos(this.elapsed);
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder("Report[decisions=").append(this.decisions)
+					.append(", recordings=").append(this.recordings)
+					.append(", late=").append(this.late)
+					.append(", missed=").append(this.missed)
+					.append(", midnightCrossings=").append(this.midnightCrossings)
+					.append(", p50=").append(this.getLatency(50d).toNanos() / 1000L).append("us")
+					.append(", p99=").append(this.getLatency(99d).toNanos() / 1000L).append("us")
+					.append(", max=").append(this.getLatency(100d).toNanos() / 1000L).append("us")
+					.append(", elapsed=").append(this.getElapsed().toMillis()).append("ms]").toString();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * 明示的に進める時計
+ */
+public final class SimulatedClock extends Clock {
+
+	/** 現在時刻 */
+	private volatile Instant instant;
+
+	/** タイムゾーン */
+	private final ZoneId zone;
+
+	/**
+	 * コンストラクタ
+	 * @param _instant 開始時刻
+	 * @param _zone タイムゾーン
+	 */
+	public SimulatedClock(Instant _instant, ZoneId _zone) {
+		this.instant = Objects.requireNonNull(_instant);
+		this.zone = Objects.requireNonNull(_zone);
+	}
+
+	/**
+	 * 時計を進める
+	 * @param _duration 進める時間
+	 */
+	public synchronized void advance(Duration _duration) {
+		this.instant = this.instant.plus(_duration);
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return this.zone;
+	}
+
+	@Override
+	public Clock withZone(ZoneId _zone) {
+		return new SimulatedClock(this.instant, _zone);
+	}
+
+	@Override
+	public Instant instant() {
+		return this.instant;
+	}
+}
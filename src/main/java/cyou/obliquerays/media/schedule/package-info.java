@@ -0,0 +1,4 @@
+/**
+ * 録音予定を管理するパッケージ
+ */
+package cyou.obliquerays.media.schedule;
@@ -0,0 +1,432 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 録音ファイルの音声の特徴量<br>
+ * 8kHzモノラルのPCMを1/8秒のブロックに分け、低域と高域のエネルギーが直前のブロックより増えたかを2ビットで保持<br>
+ * 録音開始時間の違いやMP3の再エンコードで波形が一致しなくても、ブロックの位置をずらして比較することで同じ放送の音声を判定
+ */
+public final class AudioFingerprint {
+
+	/** PCMのサンプリング周波数 */
+	public static final int SAMPLE_RATE = 8000;
+
+	/** 1ブロックの時間 */
+	public static final Duration BLOCK = Duration.ofMillis(125L);
+
+	/** 比較時にずらす最大時間、録音開始時間の違いを許容 */
+	public static final Duration MAX_SHIFT = Duration.ofMinutes(3L);
+
+	/** 同じ音声と判定するビットの一致率、無関係な音声は0.5前後 */
+	static final double THRESHOLD = 0.75d;
+
+	/** 比較する範囲の最小の重なり、短い方の録音時間に対する割合 */
+	private static final double MIN_OVERLAP = 0.8d;
+
+	/** 最も一致する位置を探す時に比較するブロックの間隔 */
+	private static final int COARSE = 8;
+
+	/** 1ブロックのサンプル数 */
+	private static final int BLOCK_SAMPLES = (int) (SAMPLE_RATE * BLOCK.toMillis() / 1000L);
+
+	/** 低域を分ける1次ローパスフィルターの係数（約370Hz） */
+	private static final double LOW_PASS = 0.25d;
+
+	/** 無音と判定するブロックの二乗平均（約-70dBFS） */
+	private static final double SILENCE = 100d;
+
+	/** 低域のエネルギーが増えたブロック */
+	private static final byte LOW_UP = 0x01;
+
+	/** 高域のエネルギーが増えたブロック */
+	private static final byte HIGH_UP = 0x02;
+
+	/** 無音のブロック、比較から除外 */
+	private static final byte SILENT = 0x04;
+
+	/** 索引キー1つに含める連続したブロック数 */
+	private static final int KEY_BLOCKS = 16;
+
+	/** 索引キーの数 */
+	static final int KEYS = 16;
+
+	/** ブロックごとの特徴量 */
+	private final byte[] blocks;
+
+	/**
+	 * コンストラクタ
+	 * @param _blocks ブロックごとの特徴量
+	 */
+	private AudioFingerprint(byte[] _blocks) {
+		this.blocks = _blocks;
+	}
+
+	/** @return ブロック数 */
+	public int size() {
+		return this.blocks.length;
+	}
+
+	/** @return 音声データが無い場合はtrue */
+	public boolean isEmpty() {
+		return this.blocks.length == 0;
+	}
+
+	/** @return 音声の長さ */
+	public Duration getDuration() {
+		return BLOCK.multipliedBy(this.blocks.length);
+	}
+
+	/**
+	 * 同じ音声の判定
+	 * @param _other 比較する特徴量
+	 * @return 一致率が{@link #THRESHOLD}以上の場合はtrue
+	 */
+	public boolean matches(AudioFingerprint _other) {
+		return this.similarity(_other) >= THRESHOLD;
+	}
+
+	/**
+	 * ブロックの位置を{@link #MAX_SHIFT}までずらした最大の一致率<br>
+	 * {@link #COARSE}ブロックおきの比較で最も一致する位置を探してから、その前後を全てのブロックで比較
+	 * @param _other 比較する特徴量
+	 * @return 無音以外のブロックのビットの一致率（0～1）、比較できない場合は0
+	 */
+	public double similarity(AudioFingerprint _other) {
+		int maxShift = (int) (MAX_SHIFT.toMillis() / BLOCK.toMillis());
+		int bestShift = 0;
+		double coarse = -1d;
+		for (int shift = -maxShift; shift <= maxShift; shift++) {
+			double agreement = this.agreement(_other, shift, COARSE);
+			if (agreement > coarse) {
+				coarse = agreement;
+				bestShift = shift;
+			}
+		}
+		double best = 0d;
+		for (int shift = bestShift - 1; shift <= bestShift + 1; shift++)
+			best = Math.max(best, this.agreement(_other, shift, 1));
+		return best;
+	}
+
+	/**
+	 * 指定した位置での一致率<br>
+	 * 重なりが短い位置と、無音が半分以上を占める位置は比較しない
+	 * @param _other 比較する特徴量
+	 * @param _shift 比較する特徴量のずらすブロック数
+	 * @param _stride 比較するブロックの間隔
+	 * @return 無音以外のブロックのビットの一致率（0～1）、比較できない場合は-1
+	 */
+	private double agreement(AudioFingerprint _other, int _shift, int _stride) {
+		byte[] a = this.blocks;
+		byte[] b = _other.blocks;
+		int from = Math.max(0, -_shift);
+		int to = Math.min(a.length, b.length - _shift);
+		if (to - from < Math.max(1, (int) Math.ceil(Math.min(a.length, b.length) * MIN_OVERLAP)))
+			return -1d;
+		int total = 0;
+		int compared = 0;
+		int equal = 0;
+		for (int i = from; i < to; i += _stride) {
+			total++;
+			int x = a[i];
+			int y = b[i + _shift];
+			if (((x | y) & SILENT) != 0)
+				continue;
+			compared++;
+			equal += 2 - Integer.bitCount((x ^ y) & (LOW_UP | HIGH_UP));
+		}
+		if (compared == 0 || compared * 2 < total)
+			return -1d;
+		return equal / (2d * compared);
+	}
+
+	/**
+	 * 同じ音声の候補を探す索引キー<br>
+	 * 無音を含まない連続した{@link #KEY_BLOCKS}ブロックのハッシュ値のうち小さい順に{@link #KEYS}個、
+	 * 音声の内容だけで決まるため録音開始時間がずれても重なった部分の多くのキーが一致
+	 * @return 16進数文字列の索引キー、無音だけの場合は空
+	 */
+	public List<String> keys() {
+		TreeSet<Long> smallest = new TreeSet<>(Long::compareUnsigned);
+		long mask = (1L << 2 * KEY_BLOCKS) - 1L;
+		long code = 0L;
+		int lastSilent = -1;
+		for (int i = 0; i < this.blocks.length; i++) {
+			if ((this.blocks[i] & SILENT) != 0)
+				lastSilent = i;
+			code = (code << 2 | this.blocks[i] & (LOW_UP | HIGH_UP)) & mask;
+			if (i - lastSilent < KEY_BLOCKS)
+				continue;
+			long hash = mix(code);
+			if (smallest.size() < KEYS || Long.compareUnsigned(hash, smallest.last()) < 0) {
+				smallest.add(hash);
+				if (smallest.size() > KEYS)
+					smallest.pollLast();
+			}
+		}
+		return smallest.stream().map(hash -> HexFormat.of().toHexDigits(hash)).toList();
+	}
+
+	/**
+	 * 64ビットのハッシュ値へ拡散（SplitMix64）
+	 * @param _code 連続したブロックの特徴量
+	 * @return ハッシュ値
+	 */
+	private static long mix(long _code) {
+		long z = _code + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/** @return Base64で符号化した特徴量 */
+	public String encode() {
+		return Base64.getEncoder().encodeToString(this.blocks);
+	}
+
+	/**
+	 * Base64で符号化した特徴量の復元
+	 * @param _text Base64で符号化した特徴量
+	 * @return 特徴量
+	 */
+	public static AudioFingerprint decode(String _text) {
+		return new AudioFingerprint(Base64.getDecoder().decode(Objects.requireNonNull(_text)));
+	}
+
+	/**
+	 * 録音ファイルと同じディレクトリに保存する特徴量のファイル
+	 * @param _mp3path 録音ファイル
+	 * @return 特徴量のファイル
+	 */
+	public static Path sidecar(Path _mp3path) {
+		return _mp3path.resolveSibling("." + _mp3path.getFileName() + ".fp");
+	}
+
+	/**
+	 * 特徴量をファイルへ保存
+	 * @param _file 保存先
+	 * @throws IOException ファイル書き込み失敗
+	 */
+	public void write(Path _file) throws IOException {
+		Files.write(_file, this.blocks);
+	}
+
+	/**
+	 * 録音ファイルの特徴量<br>
+	 * 録音中に保存した特徴量のファイルが録音ファイルより新しい場合は読み込み、それ以外はFFMPEGで録音ファイルをデコードして計算
+	 * @param _mp3path 録音ファイル
+	 * @return 特徴量
+	 * @throws IOException ファイル操作失敗、もしくはFFMPEG実行失敗
+	 * @throws InterruptedException FFMPEG実行中にスレッド割り込み
+	 */
+	public static AudioFingerprint load(Path _mp3path) throws IOException, InterruptedException {
+		Path sidecar = sidecar(_mp3path);
+		if (Files.exists(sidecar, LinkOption.NOFOLLOW_LINKS)
+				&& Files.getLastModifiedTime(sidecar).compareTo(Files.getLastModifiedTime(_mp3path)) >= 0)
+			return new AudioFingerprint(Files.readAllBytes(sidecar));
+
+		Process ffmpeg = new ProcessBuilder(getDecodingAttributes(_mp3path))
+				.redirectError(ProcessBuilder.Redirect.DISCARD)
+				.start();
+		try {
+			AudioFingerprint fingerprint = read(ffmpeg.getInputStream());
+			if (ffmpeg.waitFor() != 0)
+				throw new IOException("FFMPEGのデコード失敗 exitCode = " + ffmpeg.exitValue() + "#" + _mp3path);
+			return fingerprint;
+		} finally {
+			ffmpeg.destroyForcibly();
+		}
+	}
+
+	/**
+	 * 録音ファイルをデコードするFFMPEGのパラメータ
+	 * @param _mp3path 録音ファイル
+	 * @return FFMPEGのパラメータ
+	 */
+	static List<String> getDecodingAttributes(Path _mp3path) {
+		List<String> attrs = new ArrayList<>(0);
+		attrs.add("ffmpeg");
+		attrs.add("-nostdin");
+		attrs.add("-i");
+		attrs.add(_mp3path.toString());
+		attrs.addAll(getOutputAttributes(null));
+		return attrs;
+	}
+
+	/**
+	 * 録音と同じFFMPEGの処理で特徴量用のPCMを標準出力へ出力するパラメータ<br>
+	 * 録音ファイルの出力の後に追加する
+	 * @param _duration 録音時間、nullの場合は入力の終端まで
+	 * @return FFMPEGのパラメータ
+	 */
+	public static List<String> getOutputAttributes(Duration _duration) {
+		List<String> attrs = new ArrayList<>(0);
+		attrs.add("-vn");
+		attrs.add("-ac");
+		attrs.add("1");
+		attrs.add("-ar");
+		attrs.add(String.valueOf(SAMPLE_RATE));
+		if (Objects.nonNull(_duration)) {
+			attrs.add("-t");
+			attrs.add(String.valueOf(_duration.getSeconds()));
+		}
+		attrs.add("-f");
+		attrs.add("s16le");
+		attrs.add("pipe:1");
+		return attrs;
+	}
+
+	/**
+	 * 8kHzモノラルのPCM（符号付き16ビットリトルエンディアン）から特徴量を計算
+	 * @param _pcm PCM、終端まで読み込む
+	 * @return 特徴量
+	 * @throws IOException 読み込み失敗
+	 */
+	public static AudioFingerprint read(InputStream _pcm) throws IOException {
+		Builder builder = new Builder();
+		byte[] buffer = new byte[8192];
+		for (int length = _pcm.read(buffer); length >= 0; length = _pcm.read(buffer))
+			builder.update(buffer, 0, length);
+		return builder.build();
+	}
+
+	/**
+	 * 専用スレッドでPCMから特徴量を計算<br>
+	 * FFMPEGの標準出力が詰まらないように録音中に読み込む、
+	 * 録音中ずっとブロックするためセグメントファイルのダウンロードと共有する共通プールは使用しない
+	 * @param _pcm PCM、終端まで読み込む
+	 * @return 特徴量
+	 */
+	public static CompletableFuture<AudioFingerprint> readAsync(InputStream _pcm) {
+		CompletableFuture<AudioFingerprint> fingerprint = new CompletableFuture<>();
+		Thread thread = new Thread(() -> {
+			try (InputStream pcm = _pcm) {
+				fingerprint.complete(read(pcm));
+			} catch (IOException | RuntimeException e) {
+				fingerprint.completeExceptionally(e);
+			}
+		}, "fingerprint");
+		thread.setDaemon(true);
+		thread.start();
+		return fingerprint;
+	}
+
+	/**
+	 * PCMを順に受け取り特徴量を計算
+	 */
+	public static final class Builder {
+
+		/** ブロックごとの特徴量 */
+		private byte[] blocks = new byte[1024];
+
+		/** ブロック数 */
+		private int count;
+
+		/** 奇数バイトで区切られたサンプルの下位バイト、無い場合は-1 */
+		private int carry = -1;
+
+		/** 低域の値 */
+		private double low;
+
+		/** ブロック内のサンプル数 */
+		private int samples;
+
+		/** ブロック内の低域のエネルギー */
+		private double lowEnergy;
+
+		/** ブロック内の高域のエネルギー */
+		private double highEnergy;
+
+		/** 直前のブロックの低域のエネルギー、無い場合は負数 */
+		private double lastLow = -1d;
+
+		/** 直前のブロックの高域のエネルギー、無い場合は負数 */
+		private double lastHigh = -1d;
+
+		/**
+		 * PCMの追加
+		 * @param _pcm 符号付き16ビットリトルエンディアンのPCM
+		 * @param _offset 開始位置
+		 * @param _length バイト数
+		 */
+		public void update(byte[] _pcm, int _offset, int _length) {
+			int i = _offset;
+			int end = _offset + _length;
+			if (this.carry >= 0 && i < end) {
+				this.sample((short) (this.carry | _pcm[i++] << 8));
+				this.carry = -1;
+			}
+			for (; i + 1 < end; i += 2)
+				this.sample((short) (_pcm[i] & 0xFF | _pcm[i + 1] << 8));
+			if (i < end)
+				this.carry = _pcm[i] & 0xFF;
+		}
+
+		/**
+		 * 1サンプルの追加
+		 * @param _sample サンプル
+		 */
+		private void sample(short _sample) {
+			this.low += (_sample - this.low) * LOW_PASS;
+			double high = _sample - this.low;
+			this.lowEnergy += this.low * this.low;
+			this.highEnergy += high * high;
+			if (++this.samples < BLOCK_SAMPLES)
+				return;
+
+			double lowMean = this.lowEnergy / BLOCK_SAMPLES;
+			double highMean = this.highEnergy / BLOCK_SAMPLES;
+			byte block = 0;
+			if (lowMean + highMean < SILENCE || this.lastLow < 0d || this.lastLow + this.lastHigh < SILENCE) {
+				block = SILENT;
+			} else {
+				if (lowMean > this.lastLow)
+					block |= LOW_UP;
+				if (highMean > this.lastHigh)
+					block |= HIGH_UP;
+			}
+			if (this.count == this.blocks.length)
+				this.blocks = Arrays.copyOf(this.blocks, this.count * 2);
+			this.blocks[this.count++] = block;
+			this.lastLow = lowMean;
+			this.lastHigh = highMean;
+			this.samples = 0;
+			this.lowEnergy = 0d;
+			this.highEnergy = 0d;
+		}
+
+		/** @return 特徴量、1ブロックに満たない端数は除外 */
+		public AudioFingerprint build() {
+			return new AudioFingerprint(Arrays.copyOf(this.blocks, this.count));
+		}
+	}
+}
@@ -0,0 +1,353 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * 再放送の録音ファイルの重複排除<br>
+ * 音声の特徴量（{@link AudioFingerprint}）の索引キーごとに録音ファイルを保存ディレクトリ内のインデックスへ登録し、
+ * 索引キーが一致した候補だけを比較して録音開始時間がずれた同じ音声の録音ファイルを判定<br>
+ * 番組名と放送局が同じ録音ファイルはハードリンクに置き換えて音声を1つだけ保持し、
+ * 放送日などID3タグが異なる場合は録音ファイル自身のID3タグを「.[録音ファイル].id3」へ保存
+ */
+public class RecordingDeduplicator {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(RecordingDeduplicator.class.getName());
+
+    /** インデックスのディレクトリ名 */
+    private static final String INDEX_DIR = ".index";
+
+    /** 録音ファイルごとのインデックスのディレクトリ名 */
+    private static final String ENTRIES_DIR = "entries";
+
+    /** 索引キーごとの録音ファイル名のディレクトリ名 */
+    private static final String KEYS_DIR = "keys";
+
+    /** インデックスのファイル名の拡張子 */
+    private static final String SUFFIX = ".properties";
+
+    /** 同じ番組と判定するID3タグ（番組名、放送局） */
+    private static final List<String> PROGRAM_FRAMES = List.of("TIT2", "TPE1");
+
+    /** インデックスのディレクトリ */
+    private final Path index;
+
+	/**
+	 * コンストラクタ
+	 * @param _baseDir 録音ファイル保存ディレクトリ
+	 */
+	public RecordingDeduplicator(Path _baseDir) {
+		this.index = Objects.requireNonNull(_baseDir).resolve(INDEX_DIR).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * 録音ファイルの重複排除<br>
+	 * 録音中に保存した特徴量を使い、無い場合はFFMPEGで録音ファイルから計算
+	 * @param _mp3path 録音ファイル
+	 * @return 同じ音声の録音ファイルがあった場合はtrue
+	 * @throws IOException ファイル操作失敗、もしくは特徴量の計算失敗
+	 * @throws InterruptedException 特徴量の計算中にスレッド割り込み
+	 */
+	public boolean deduplicate(Path _mp3path) throws IOException, InterruptedException {
+		try {
+			return this.deduplicate(_mp3path, AudioFingerprint.load(_mp3path));
+		} finally {
+			Files.deleteIfExists(AudioFingerprint.sidecar(_mp3path));
+		}
+	}
+
+	/**
+	 * 録音ファイルの重複排除<br>
+	 * 同じ音声の録音ファイルをインデックスから検索し、番組名と放送局も同じ場合は録音ファイルをハードリンクに置き換え<br>
+	 * その他のID3タグが異なる場合は置き換える前に録音ファイル自身のID3タグを保存
+	 * @param _mp3path 録音ファイル
+	 * @param _fingerprint 録音ファイルの音声の特徴量
+	 * @return 同じ音声の録音ファイルがあった場合はtrue
+	 * @throws IOException ファイル操作失敗
+	 */
+	public boolean deduplicate(Path _mp3path, AudioFingerprint _fingerprint) throws IOException {
+		Path mp3path = _mp3path.toAbsolutePath().normalize();
+		if (_fingerprint.isEmpty()) {
+			LOG.log(Level.WARNING, "音声データの無い録音ファイルは重複排除しない#" + mp3path);
+			return false;
+		}
+
+		List<String> keys = _fingerprint.keys();
+		this.remove(mp3path.getFileName().toString());
+		Path original = this.find(mp3path, _fingerprint, keys);
+		Path tags = null;
+		if (Objects.nonNull(original)) {
+			Map<String, String> originalFrames = textFrames(original);
+			Map<String, String> frames = textFrames(mp3path);
+			if (PROGRAM_FRAMES.stream().allMatch(id -> Objects.equals(originalFrames.get(id), frames.get(id)))) {
+				if (!originalFrames.equals(frames))
+					tags = this.saveTag(mp3path);
+				this.link(mp3path, original);
+			} else {
+				LOG.log(Level.INFO, "同じ音声の別番組の録音ファイル、置き換えずに参照を記録#" + mp3path + " -> " + original);
+			}
+		}
+		this.register(mp3path, _fingerprint, keys, original, tags);
+		return Objects.nonNull(original);
+	}
+
+	/**
+	 * 録音ファイル自身のID3タグを保存するファイル
+	 * @param _mp3path 録音ファイル
+	 * @return 録音ファイルと同じディレクトリのID3タグのファイル
+	 */
+	public static Path tagPath(Path _mp3path) {
+		return _mp3path.resolveSibling("." + _mp3path.getFileName() + ".id3");
+	}
+
+	/**
+	 * 同じ音声の録音ファイルの検索<br>
+	 * 索引キーが一致した録音ファイルだけを、一致したキーの多い順に比較
+	 * @param _mp3path 録音ファイル
+	 * @param _fingerprint 録音ファイルの音声の特徴量
+	 * @param _keys 録音ファイルの索引キー
+	 * @return 同じ音声の録音ファイル、無い場合はnull
+	 * @throws IOException ファイル操作失敗
+	 */
+	private Path find(Path _mp3path, AudioFingerprint _fingerprint, List<String> _keys) throws IOException {
+		Map<String, Integer> candidates = new HashMap<>();
+		for (String key : _keys) {
+			Path dir = this.index.resolve(KEYS_DIR).resolve(key);
+			if (!Files.isDirectory(dir))
+				continue;
+			try (Stream<Path> list = Files.list(dir)) {
+				list.forEach(name -> candidates.merge(name.getFileName().toString(), 1, Integer::sum));
+			}
+		}
+		List<String> names = candidates.entrySet().stream()
+				.sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+				.map(Map.Entry::getKey)
+				.toList();
+		for (String name : names) {
+			Properties state = this.load(name);
+			Path file = Path.of(state.getProperty("file", ""));
+			if (!isCurrent(file, state)) {
+				this.remove(name);
+			} else if (!file.equals(_mp3path) && AudioFingerprint.decode(state.getProperty("fingerprint", "")).matches(_fingerprint)) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * インデックスの読み取り
+	 * @param _name 録音ファイル名
+	 * @return インデックスの内容、無い場合は空
+	 * @throws IOException ファイル読み取り失敗
+	 */
+	private Properties load(String _name) throws IOException {
+		Properties state = new Properties();
+		Path entry = this.index.resolve(ENTRIES_DIR).resolve(_name + SUFFIX);
+		if (Files.exists(entry)) {
+			try (InputStream in = Files.newInputStream(entry)) {
+				state.load(in);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * インデックスと索引キーの削除<br>
+	 * 録音ファイルが削除もしくは上書きされた場合は保存したID3タグも削除
+	 * @param _name 録音ファイル名
+	 * @throws IOException ファイル操作失敗
+	 */
+	private void remove(String _name) throws IOException {
+		Properties state = this.load(_name);
+		for (String key : state.getProperty("keys", "").split(",")) {
+			if (!key.isEmpty())
+				Files.deleteIfExists(this.index.resolve(KEYS_DIR).resolve(key).resolve(_name));
+		}
+		if (state.containsKey("tags"))
+			Files.deleteIfExists(Path.of(state.getProperty("tags")));
+		if (Files.deleteIfExists(this.index.resolve(ENTRIES_DIR).resolve(_name + SUFFIX)))
+			LOG.log(Level.INFO, "重複排除インデックス削除#" + _name);
+	}
+
+	/**
+	 * インデックスの録音ファイルが登録時から変わっていないか判定
+	 * @param _file 録音ファイル
+	 * @param _state インデックスの内容
+	 * @return 録音ファイルが存在し、サイズと更新日時が登録時と同じ場合はtrue
+	 * @throws IOException ファイル操作失敗
+	 */
+	private static boolean isCurrent(Path _file, Properties _state) throws IOException {
+		return Files.isRegularFile(_file)
+				&& String.valueOf(Files.size(_file)).equals(_state.getProperty("size"))
+				&& String.valueOf(Files.getLastModifiedTime(_file).toMillis()).equals(_state.getProperty("modified"));
+	}
+
+	/**
+	 * 録音ファイル自身のID3v2タグを保存
+	 * @param _mp3path 録音ファイル
+	 * @return ID3タグのファイル
+	 * @throws IOException ファイル操作失敗
+	 */
+	private Path saveTag(Path _mp3path) throws IOException {
+		Path tags = tagPath(_mp3path);
+		Path temp = tags.resolveSibling(tags.getFileName() + ".tmp");
+		Files.write(temp, tag(_mp3path));
+		Files.move(temp, tags, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOG.log(Level.INFO, "録音ファイルのID3タグを保存#" + tags);
+		return tags;
+	}
+
+	/**
+	 * 録音ファイルを同じ音声の録音ファイルへのハードリンクに置き換え
+	 * @param _mp3path 録音ファイル
+	 * @param _original 同じ音声の録音ファイル
+	 * @throws IOException ファイル操作失敗
+	 */
+	private void link(Path _mp3path, Path _original) throws IOException {
+		if (Files.isSameFile(_mp3path, _original))
+			return;
+		Path temp = _mp3path.resolveSibling(_mp3path.getFileName() + ".link");
+		Files.deleteIfExists(temp);
+		try {
+			Files.createLink(temp, _original);
+		} catch (UnsupportedOperationException | FileSystemException e) {
+			LOG.log(Level.WARNING, "ハードリンク作成失敗、シンボリックリンクで代替#" + temp, e);
+			Files.createSymbolicLink(temp, _original);
+		}
+		Files.move(temp, _mp3path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOG.log(Level.INFO, "重複した録音ファイルをリンクに置き換え#" + _mp3path + " -> " + _original);
+	}
+
+	/**
+	 * 録音ファイルをインデックスと索引キーに登録
+	 * @param _mp3path 録音ファイル
+	 * @param _fingerprint 録音ファイルの音声の特徴量
+	 * @param _keys 録音ファイルの索引キー
+	 * @param _original 同じ音声の録音ファイル、無い場合はnull
+	 * @param _tags 保存したID3タグのファイル、無い場合はnull
+	 * @throws IOException ファイル操作失敗
+	 */
+	private void register(Path _mp3path, AudioFingerprint _fingerprint, List<String> _keys, Path _original, Path _tags) throws IOException {
+		String name = _mp3path.getFileName().toString();
+		Properties state = new Properties();
+		state.setProperty("file", _mp3path.toString());
+		state.setProperty("size", String.valueOf(Files.size(_mp3path)));
+		state.setProperty("modified", String.valueOf(Files.getLastModifiedTime(_mp3path).toMillis()));
+		state.setProperty("fingerprint", _fingerprint.encode());
+		state.setProperty("keys", String.join(",", _keys));
+		if (Objects.nonNull(_original))
+			state.setProperty("duplicate", _original.toString());
+		if (Objects.nonNull(_tags))
+			state.setProperty("tags", _tags.toString());
+		Path dir = Files.createDirectories(this.index.resolve(ENTRIES_DIR));
+		Path entry = dir.resolve(name + SUFFIX);
+		Path temp = dir.resolve(entry.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			state.store(out, null);
+		}
+		Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		for (String key : _keys) {
+			Path marker = Files.createDirectories(this.index.resolve(KEYS_DIR).resolve(key)).resolve(name);
+			if (!Files.exists(marker))
+				Files.createFile(marker);
+		}
+		LOG.log(Level.INFO, "重複排除インデックス登録 索引キー数 = " + _keys.size() + "#" + entry);
+	}
+
+	/**
+	 * ID3v2タグ全体（ヘッダー、フレーム、フッター）
+	 * @param _mp3path 録音ファイル
+	 * @return ID3v2タグ、無い場合は空
+	 * @throws IOException ファイル読み取り失敗
+	 */
+	static byte[] tag(Path _mp3path) throws IOException {
+		try (FileChannel channel = FileChannel.open(_mp3path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(10);
+			if (channel.read(header, 0L) < 10 || header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3')
+				return new byte[0];
+			long length = Math.min(channel.size(), 10L + syncsafe(header, 6) + ((header.get(5) & 0x10) != 0 ? 10L : 0L));
+			ByteBuffer tag = ByteBuffer.allocate((int) length);
+			while (tag.hasRemaining() && channel.read(tag, tag.position()) >= 0)
+				continue;
+			return tag.array();
+		}
+	}
+
+	/**
+	 * ID3v2タグのテキスト情報フレーム（T***）<br>
+	 * チャプターなど録音ごとに異なるフレームは比較しない
+	 * @param _mp3path 録音ファイル
+	 * @return フレームIDと内容（16進数文字列）、ID3v2タグが無い場合は空
+	 * @throws IOException ファイル読み取り失敗
+	 */
+	static Map<String, String> textFrames(Path _mp3path) throws IOException {
+		Map<String, String> frames = new TreeMap<>();
+		try (FileChannel channel = FileChannel.open(_mp3path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(10);
+			if (channel.read(header, 0L) < 10 || header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3')
+				return frames;
+			int version = header.get(3);
+			int size = syncsafe(header, 6);
+			ByteBuffer tag = ByteBuffer.allocate((int) Math.min(size, Math.max(0L, channel.size() - 10L)));
+			channel.read(tag, 10L);
+			int position = 0;
+			while (position + 10 <= tag.limit() && tag.get(position) != 0) {
+				String id = new String(tag.array(), position, 4, StandardCharsets.ISO_8859_1);
+				int length = version >= 4 ? syncsafe(tag, position + 4) : tag.getInt(position + 4);
+				if (length < 0 || position + 10 + length > tag.limit())
+					break;
+				if (id.charAt(0) == 'T')
+					frames.put(id, HexFormat.of().formatHex(tag.array(), position + 10, position + 10 + length));
+				position += 10 + length;
+			}
+		}
+		return frames;
+	}
+
+	/**
+	 * ID3v2の同期安全整数
+	 * @param _buffer 読み取り元
+	 * @param _index 位置
+	 * @return 整数
+	 */
+	private static int syncsafe(ByteBuffer _buffer, int _index) {
+		return (_buffer.get(_index) & 0x7F) << 21 | (_buffer.get(_index + 1) & 0x7F) << 14
+				| (_buffer.get(_index + 2) & 0x7F) << 7 | (_buffer.get(_index + 3) & 0x7F);
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.store;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+import cyou.obliquerays.media.hls.HlsSegment;
+import cyou.obliquerays.media.hls.HlsSegmentSink;
+
+/**
+ * 直近のセグメントファイル（.ts）を保持するリングバッファ<br>
+ * ヒープ外の固定長バッファに受信したままのセグメントファイルを保持し、
+ * 保持時間もしくは容量を超えた古いセグメントから上書き<br>
+ * 再取得や再エンコードをせずに過去の任意の時間帯をファイルへ出力、出力中もセグメントの追加は待たせない
+ */
+public class SegmentRingBuffer implements HlsSegmentSink {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(SegmentRingBuffer.class.getName());
+
+	/** セグメントの保持位置 */
+	private static final class Entry {
+		/** セグメント先頭の放送時刻 */
+		private final Instant start;
+		/** セグメント終端の放送時刻 */
+		private final Instant end;
+		/** バッファ内の開始位置 */
+		private final int offset;
+		/** セグメントファイルのサイズ */
+		private final int length;
+		/** 追加時点の累計書き込みサイズ */
+		private final long position;
+
+		/**
+		 * コンストラクタ
+		 * @param _start セグメント先頭の放送時刻
+		 * @param _end セグメント終端の放送時刻
+		 * @param _offset バッファ内の開始位置
+		 * @param _length セグメントファイルのサイズ
+		 * @param _position 追加時点の累計書き込みサイズ
+		 */
+		private Entry(Instant _start, Instant _end, int _offset, int _length, long _position) {
+			this.start = _start;
+			this.end = _end;
+			this.offset = _offset;
+			this.length = _length;
+			this.position = _position;
+		}
+	}
+
+	/** セグメントファイルを保持するヒープ外のバッファ */
+	private final ByteBuffer buffer;
+
+	/** 保持時間 */
+	private final Duration retention;
+
+	/** 保持中のセグメント、古い順 */
+	private final Deque<Entry> entries = new ArrayDeque<>();
+
+	/** 次のセグメントの書き込み位置 */
+	private int head = 0;
+
+	/** 保持中のセグメントファイルの合計サイズ */
+	private int used = 0;
+
+	/** 追加したセグメントファイルの累計書き込みサイズ、出力中の上書き検出に使用 */
+	private long written = 0L;
+
+	/** 放送時刻の無いセグメントの基準にした放送時刻 */
+	private Instant anchorTime = null;
+
+	/** 放送時刻の無いセグメントの基準にしたメディアシーケンス番号 */
+	private long anchorSequence = 0L;
+
+	/** 最後に追加したセグメントのメディアシーケンス番号 */
+	private long lastSequence = -1L;
+
+	/**
+	 * コンストラクタ
+	 * @param _retention 保持時間
+	 * @param _capacity バッファの容量（バイト）、ヒープ外バッファの上限は{@link Integer#MAX_VALUE}
+	 */
+	public SegmentRingBuffer(Duration _retention, long _capacity) {
+		if (_capacity <= 0L || _capacity > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("リングバッファの容量が不正#" + _capacity);
+		this.retention = Objects.requireNonNull(_retention);
+		this.buffer = ByteBuffer.allocateDirect((int) _capacity);
+	}
+
+	/** @return バッファの容量（バイト） */
+	public int getCapacity() {
+		return this.buffer.capacity();
+	}
+
+	/**
+	 * セグメントファイルの追加<br>
+	 * 放送時刻の無いセグメントはメディアシーケンス番号と再生時間から放送時刻を推定、
+	 * 受信時刻は最初のセグメントと不連続なセグメントの基準にだけ使用
+	 * @param _segment セグメント
+	 * @param _data セグメントファイルの内容
+	 */
+	@Override
+	public synchronized void accept(HlsSegment _segment, byte[] _data) {
+		if (_data.length > this.buffer.capacity()) {
+			LOG.log(Level.WARNING, "リングバッファの容量を超えるセグメント#" + _segment);
+			return;
+		}
+		Duration duration = Duration.ofMillis(Math.round(_segment.getDuration() * 1000d));
+		Instant start = _segment.getProgramDateTime();
+		if (Objects.isNull(start)) {
+			if (Objects.isNull(this.anchorTime) || _segment.isDiscontinuity() || _segment.getSequence() <= this.lastSequence) {
+				this.anchorTime = Instant.now().minus(duration);
+				this.anchorSequence = _segment.getSequence();
+			}
+			start = this.anchorTime.plus(duration.multipliedBy(_segment.getSequence() - this.anchorSequence));
+		} else {
+			this.anchorTime = null;
+		}
+		this.lastSequence = _segment.getSequence();
+		Instant end = start.plus(duration);
+
+		while (!this.entries.isEmpty()
+				&& (this.used + _data.length > this.buffer.capacity()
+						|| this.entries.peekFirst().end.isBefore(end.minus(this.retention)))) {
+			this.used -= this.entries.pollFirst().length;
+		}
+
+		int offset = this.head;
+		int first = Math.min(_data.length, this.buffer.capacity() - offset);
+		this.buffer.put(offset, _data, 0, first);
+		this.buffer.put(0, _data, first, _data.length - first);
+		this.head = (offset + _data.length) % this.buffer.capacity();
+		this.used += _data.length;
+		this.entries.addLast(new Entry(start, end, offset, _data.length, this.written));
+		this.written += _data.length;
+	}
+
+	/** @return 保持中の最も古い放送時刻、空の場合はnull */
+	public synchronized Instant getOldest() {
+		return this.entries.isEmpty() ? null : this.entries.peekFirst().start;
+	}
+
+	/** @return 保持中の最も新しい放送時刻、空の場合はnull */
+	public synchronized Instant getNewest() {
+		return this.entries.isEmpty() ? null : this.entries.peekLast().end;
+	}
+
+	/**
+	 * 指定した時間帯のセグメントファイルを結合してファイルへ出力<br>
+	 * ヒープへ複製せずにバッファのスライスから直接書き込み、書き込み中はロックを保持しないため
+	 * 書き込み後に累計書き込みサイズで上書きされていないことを確認
+	 * @param _from 出力開始の放送時刻
+	 * @param _to 出力終了の放送時刻
+	 * @param _file 出力ファイル（.ts）
+	 * @return 出力したセグメント数
+	 * @throws IOException ファイル出力失敗、もしくは出力中に該当する時間帯が上書きされた
+	 */
+	public int dump(Instant _from, Instant _to, Path _file) throws IOException {
+		List<Entry> segments;
+		ByteBuffer view;
+		synchronized (this) {
+			segments = this.entries.stream()
+					.filter(entry -> entry.end.isAfter(_from) && entry.start.isBefore(_to))
+					.toList();
+			view = this.buffer.duplicate();
+		}
+		if (segments.isEmpty()) {
+			LOG.log(Level.WARNING, "リングバッファに該当する時間帯なし#" + _from + " - " + _to);
+			return 0;
+		}
+
+		Path temp = _file.resolveSibling(_file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (Entry entry : segments) {
+				int first = Math.min(entry.length, view.capacity() - entry.offset);
+				write(channel, view.slice(entry.offset, first));
+				write(channel, view.slice(0, entry.length - first));
+			}
+		}
+		boolean overwritten;
+		synchronized (this) {
+			overwritten = this.written - segments.get(0).position > this.buffer.capacity();
+		}
+		if (overwritten) {
+			Files.deleteIfExists(temp);
+			throw new IOException("出力中にリングバッファが上書きされたため出力失敗#" + _file);
+		}
+		Files.move(temp, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOG.log(Level.INFO, "リングバッファ出力 セグメント数 = " + segments.size() + "#" + _file);
+		return segments.size();
+	}
+
+	/**
+	 * バッファのスライスをファイルへ書き込み
+	 * @param _channel 出力ファイル
+	 * @param _slice バッファのスライス
+	 * @throws IOException ファイル出力失敗
+	 */
+	private static void write(FileChannel _channel, ByteBuffer _slice) throws IOException {
+		while (_slice.hasRemaining())
+			_channel.write(_slice);
+	}
+}
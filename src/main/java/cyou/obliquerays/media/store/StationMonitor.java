@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.store;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import cyou.obliquerays.media.hls.HlsClient;
+import cyou.obliquerays.media.hls.LiveHlsSource;
+import cyou.obliquerays.media.hls.MirrorSelector;
+
+/**
+ * 放送局の常時受信<br>
+ * ライブ配信のセグメントファイル（.ts）を受信し続けてリングバッファへ保持
+ */
+public class StationMonitor implements Runnable {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(StationMonitor.class.getName());
+
+    /** 1リクエストのタイムアウト */
+    private static final Duration TIMEOUT = Duration.ofSeconds(10L);
+
+    /** 受信失敗後の再開までの待機時間（秒） */
+    private static final long RESTART_SECONDS = 10L;
+
+    /** ライブ配信の受信 */
+    private final LiveHlsSource source;
+
+    /** リングバッファ */
+    private final SegmentRingBuffer ring;
+
+	/**
+	 * コンストラクタ
+	 * @param _selector 放送局のミラーURIの選択
+	 * @param _ring リングバッファ
+	 */
+	public StationMonitor(MirrorSelector _selector, SegmentRingBuffer _ring) {
+		this.source = new LiveHlsSource(new HlsClient(1, TIMEOUT), Objects.requireNonNull(_selector));
+		this.ring = Objects.requireNonNull(_ring);
+	}
+
+	@Override
+	public void run() {
+		LOG.log(Level.INFO, "リングバッファへの受信開始 容量 = " + this.ring.getCapacity() + "bytes");
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				this.source.stream(this.ring, Instant.MAX);
+			} catch (IOException | RuntimeException e) {
+				LOG.log(Level.ERROR, "リングバッファへの受信失敗、" + RESTART_SECONDS + "秒後に再開", e);
+				try {
+					TimeUnit.SECONDS.sleep(RESTART_SECONDS);
+				} catch (InterruptedException ie) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		LOG.log(Level.INFO, "リングバッファへの受信終了");
+	}
+}
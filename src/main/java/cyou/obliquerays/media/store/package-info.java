@@ -0,0 +1,4 @@
+/**
+ * 録音ファイルの保存領域を管理するパッケージ
+ */
+package cyou.obliquerays.media.store;
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.status;
+
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * ファイルによる処理要求の受付<br>
+ * 要求ファイルが作成されたら内容を読み取って削除し、要求を処理
+ */
+public class RequestFileStatus implements Runnable {
+    /** ロガー */
+    private static final Logger LOG = System.getLogger(RequestFileStatus.class.getName());
+
+    /** 要求ファイル */
+    private final Path requestFile;
+
+    /** 要求の処理 */
+    private final Consumer<List<String>> handler;
+
+	/**
+	 * コンストラクター
+	 * @param _requestFile 要求ファイル
+	 * @param _handler 要求ファイルの各行を受け取る処理
+	 */
+	public RequestFileStatus(Path _requestFile, Consumer<List<String>> _handler) {
+		this.requestFile = Objects.requireNonNull(_requestFile).toAbsolutePath().normalize();
+		this.handler = Objects.requireNonNull(_handler);
+		LOG.log(Level.INFO, "要求ファイル監視#" + this.requestFile);
+	}
+
+	@Override
+	public void run() {
+		if (!Files.exists(this.requestFile, LinkOption.NOFOLLOW_LINKS))
+			return;
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(this.requestFile, StandardCharsets.UTF_8);
+			Files.delete(this.requestFile);
+		} catch (IOException e) {
+			LOG.log(Level.ERROR, "要求ファイルの読み取りに失敗#" + this.requestFile, e);
+			return;
+		}
+		LOG.log(Level.INFO, "要求ファイル受付#" + this.requestFile + " " + lines);
+		try {
+			this.handler.accept(lines);
+		} catch (RuntimeException e) {
+			LOG.log(Level.ERROR, "要求の処理に失敗#" + lines, e);
+		}
+	}
+}
@@ -7,4 +7,5 @@ module radio.recorder {
 
 	requires transitive java.logging;
 	requires java.net.http;
+	requires jdk.jfr;
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import java.lang.System.Logger.Level;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.logging.LogManager;
 
 import org.junit.jupiter.api.AfterAll;
@@ -92,4 +93,18 @@ class RadioRecProcessTest {
 
 		Assertions.assertTrue(Files.exists(RadioProperties.getProperties().getMp3FilePath()));
 	}
+
+	/**
+	 * 時刻のみの指定は基準日時以前で直近の日時、日付をまたぐ時間帯も解決
+	 * {@link cyou.obliquerays.media.RadioRecProcess#parseDateTime(String, LocalDateTime)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testParseDateTime() {
+		LocalDateTime newest = LocalDateTime.of(2022, 6, 21, 0, 15);
+		LocalDateTime to = RadioRecProcess.parseDateTime("00:10", newest);
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 21, 0, 10), to);
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 20, 23, 50), RadioRecProcess.parseDateTime("23:50", to));
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 20, 0, 20), RadioRecProcess.parseDateTime("00:20", newest));
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 19, 6, 0), RadioRecProcess.parseDateTime("2022-06-19T06:00", newest));
+	}
 }
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.command;
+
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Id3ChaptersのUnitTest */
+class Id3ChaptersTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(Id3ChaptersTest.class.getName());
+
+	/** 音声データの代わりのMPEGフレームヘッダー */
+	private static final byte[] AUDIO = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x00};
+
+	/** 出力ディレクトリ */
+	@TempDir
+	Path baseDir;
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * TIT2フレームとパディングのID3v2.3タグに続く音声データ
+	 * @param _padding パディングのバイト数
+	 * @return MP3ファイルの内容
+	 */
+	private static byte[] mp3(int _padding) {
+		byte[] title = "\u0000english0".getBytes(StandardCharsets.ISO_8859_1);
+		int size = 10 + title.length + _padding;
+		ByteBuffer mp3 = ByteBuffer.allocate(10 + size + AUDIO.length);
+		mp3.put("ID3".getBytes(StandardCharsets.US_ASCII)).put((byte) 3).put((byte) 0).put((byte) 0);
+		mp3.put((byte) (size >> 21 & 0x7F)).put((byte) (size >> 14 & 0x7F)).put((byte) (size >> 7 & 0x7F)).put((byte) (size & 0x7F));
+		mp3.put("TIT2".getBytes(StandardCharsets.US_ASCII)).putInt(title.length).putShort((short) 0).put(title);
+		mp3.position(mp3.position() + _padding);
+		mp3.put(AUDIO);
+		return mp3.array();
+	}
+
+	/**
+	 * パディングへチャプターを書き込み、ファイルサイズと音声データは変更なし
+	 * {@link cyou.obliquerays.media.command.Id3Chapters#write(Path, String, List, Duration)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testWrite() throws Exception {
+		Path mp3path = Files.write(this.baseDir.resolve("english0-20220620.mp3"), mp3(Id3Chapters.PADDING));
+		List<Duration> starts = List.of(Duration.ZERO, Duration.ofMinutes(15L), Duration.ZERO, Duration.ofMinutes(60L));
+
+		Assertions.assertEquals(2, Id3Chapters.write(mp3path, "基礎英語", starts, Duration.ofMinutes(20L)));
+
+		byte[] written = Files.readAllBytes(mp3path);
+		Assertions.assertEquals(mp3(Id3Chapters.PADDING).length, written.length);
+		Assertions.assertArrayEquals(AUDIO, Arrays.copyOfRange(written, written.length - AUDIO.length, written.length));
+		String tag = new String(written, StandardCharsets.ISO_8859_1);
+		Assertions.assertEquals(29, tag.indexOf("CTOC"));
+		Assertions.assertTrue(tag.contains("chp1"));
+		Assertions.assertFalse(tag.contains("chp2"));
+	}
+
+	/**
+	 * パディングが不足する場合は書き込まない
+	 * {@link cyou.obliquerays.media.command.Id3Chapters#write(Path, String, List, Duration)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testWriteWithoutPadding() throws Exception {
+		Path mp3path = Files.write(this.baseDir.resolve("english0-20220620.mp3"), mp3(10));
+		List<Duration> starts = List.of(Duration.ZERO, Duration.ofMinutes(15L));
+
+		Assertions.assertEquals(0, Id3Chapters.write(mp3path, "基礎英語", starts, Duration.ofMinutes(20L)));
+		Assertions.assertArrayEquals(mp3(10), Files.readAllBytes(mp3path));
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.guide;
+
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cyou.obliquerays.media.schedule.RecordingDecision;
+import cyou.obliquerays.media.schedule.RecordingSchedule;
+import cyou.obliquerays.media.schedule.RecordingSlot;
+
+/** ProgramGuideのUnitTest */
+class ProgramGuideTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(ProgramGuideTest.class.getName());
+
+	/** 日本標準時 */
+	private static final ZoneId JST = ZoneId.of("Asia/Tokyo");
+
+	/** 出力ディレクトリ */
+	@TempDir
+	Path baseDir;
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * テスト用の番組表JSON
+	 * @return 番組表JSON
+	 * @throws Exception
+	 */
+	private static String fixture() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("guide.json")) {
+			return new String(resource.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * 番組表の解析と番組名、放送開始日時の索引
+	 * {@link cyou.obliquerays.media.guide.ProgramGuide#parse(String, ZoneId)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testParse() throws Exception {
+		ProgramGuide guide = new ProgramGuide(ProgramGuide.parse(fixture(), JST));
+
+		Assertions.assertEquals(6, guide.size());
+		Assertions.assertEquals(3, guide.find("基礎英語１").size());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 22, 6, 0), guide.find("基礎英語１").get(2).getStart());
+		// UTCの放送日時は日本標準時へ変換
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 21, 6, 15), guide.find("ラジオ英会話").get(1).getStart());
+		Assertions.assertEquals(2, guide.between(LocalDateTime.of(2022, 6, 21, 0, 0), LocalDateTime.of(2022, 6, 22, 0, 0)).size());
+		Assertions.assertTrue(guide.find("ラジオ深夜便").get(0).getEnd().isAfter(LocalDateTime.of(2022, 6, 21, 0, 0)));
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> ProgramGuide.parse("{\"list\": [", JST));
+	}
+
+	/**
+	 * 番組名の全ての放送回を録音枠に変換して録音予定に反映
+	 * {@link cyou.obliquerays.media.guide.ProgramGuide#resolve(Map, LocalDateTime, Duration, Duration)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testResolve() throws Exception {
+		ProgramGuide guide = new ProgramGuide(ProgramGuide.parse(fixture(), JST));
+		Map<String, String> rules = new LinkedHashMap<>();
+		rules.put("基礎英語１", "english1");
+		rules.put("ラジオ深夜便", "shinyabin");
+
+		List<RecordingSlot> slots = guide.resolve(rules, LocalDateTime.of(2022, 6, 20, 12, 0), Duration.ofSeconds(190L), Duration.ZERO);
+		// 放送終了した2022-06-20の基礎英語１は除外
+		Assertions.assertEquals(3, slots.size());
+		Assertions.assertEquals("english1-0600", slots.get(0).getProgram().getFilePrefix());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 21, 6, 3, 10), slots.get(0).getStart());
+
+		RecordingSchedule schedule = new RecordingSchedule(List.of(), slots);
+		RecordingDecision decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 23, 7), Set.of());
+		Assertions.assertTrue(decision.isRecord());
+		Assertions.assertEquals("shinyabin-2305", decision.getSlot().getProgram().getFilePrefix());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 21, 5, 0), decision.getSlot().getEnd());
+
+		// 次の録音枠は2022-06-21 06:03:10の2分前まで待機
+		decision = schedule.decide(LocalDateTime.of(2022, 6, 21, 5, 30), Set.of(decision.getSlot()));
+		Assertions.assertFalse(decision.isRecord());
+		Assertions.assertEquals(Duration.ofMinutes(31L).plusSeconds(10L), decision.getWait());
+	}
+
+	/**
+	 * 同じ日の放送回は録音ファイル名が重ならず、録音時間が長すぎる番組は除外
+	 * {@link cyou.obliquerays.media.guide.ProgramGuide#resolve(Map, LocalDateTime, Duration, Duration)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testResolveSameDay() throws Exception {
+		ProgramGuide guide = new ProgramGuide(List.of(
+				new GuideEntry("基礎英語１", LocalDateTime.of(2022, 6, 21, 6, 0), LocalDateTime.of(2022, 6, 21, 6, 15)),
+				new GuideEntry("基礎英語１", LocalDateTime.of(2022, 6, 21, 14, 0), LocalDateTime.of(2022, 6, 21, 14, 15)),
+				new GuideEntry("基礎英語１", LocalDateTime.of(2022, 6, 21, 20, 0), LocalDateTime.of(2022, 6, 22, 9, 0))));
+		Map<String, String> rules = Map.of("基礎英語１", "english1");
+
+		List<RecordingSlot> slots = guide.resolve(rules, LocalDateTime.of(2022, 6, 20, 12, 0), Duration.ZERO, Duration.ZERO);
+		Assertions.assertEquals(2, slots.size());
+		Assertions.assertEquals("english1-0600", slots.get(0).getProgram().getFilePrefix());
+		Assertions.assertEquals("english1-1400", slots.get(1).getProgram().getFilePrefix());
+	}
+
+	/**
+	 * 番組の追加は放送期間の重なる番組を置き換え、期限より前の番組を削除
+	 * {@link cyou.obliquerays.media.guide.ProgramGuide#merge(java.util.Collection, LocalDateTime)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testMerge() throws Exception {
+		ProgramGuide guide = new ProgramGuide(ProgramGuide.parse(fixture(), JST));
+		List<GuideEntry> update = List.of(
+				new GuideEntry("基礎英語１", LocalDateTime.of(2022, 6, 22, 6, 0), LocalDateTime.of(2022, 6, 22, 6, 15)),
+				new GuideEntry("臨時ニュース", LocalDateTime.of(2022, 6, 22, 6, 15), LocalDateTime.of(2022, 6, 22, 6, 30)));
+
+		ProgramGuide merged = guide.merge(update, LocalDateTime.of(2022, 6, 21, 0, 0));
+
+		// 2022-06-20に放送終了した2番組を削除、2022-06-22の基礎英語１は置き換え
+		Assertions.assertEquals(5, merged.size());
+		Assertions.assertEquals(2, merged.find("基礎英語１").size());
+		Assertions.assertEquals(1, merged.find("臨時ニュース").size());
+		Assertions.assertEquals(6, guide.size());
+	}
+
+	/**
+	 * 変更がない場合は解析を省略
+	 * {@link cyou.obliquerays.media.guide.GuideRefresher#refresh()} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testRefresh() throws Exception {
+		Path file = Files.writeString(this.baseDir.resolve("guide.json"), fixture(), StandardCharsets.UTF_8);
+		Clock clock = Clock.fixed(LocalDateTime.of(2022, 6, 20, 12, 0).atZone(JST).toInstant(), JST);
+		List<ProgramGuide> notified = new ArrayList<>();
+		GuideRefresher refresher = new GuideRefresher(file.toUri(), clock, notified::add);
+
+		Assertions.assertTrue(refresher.refresh());
+		Assertions.assertFalse(refresher.refresh());
+		Assertions.assertEquals(1, notified.size());
+		Assertions.assertSame(notified.get(0), refresher.getGuide());
+		Assertions.assertEquals(6, refresher.getGuide().size());
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** HlsClientのUnitTest */
+class HlsClientTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(HlsClientTest.class.getName());
+
+	/** 1リクエストのタイムアウト */
+	private static final Duration TIMEOUT = Duration.ofSeconds(5L);
+
+	/** メディアプレイリスト */
+	private static final String MEDIA = "#EXTM3U\n#EXT-X-TARGETDURATION:5\n#EXTINF:5.0,\n0.ts\n#EXT-X-ENDLIST\n";
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * マスタープレイリストは先頭のバリアントを取得
+	 * {@link cyou.obliquerays.media.hls.HlsClient#getPlaylist(URI)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testGetPlaylistMaster() throws Exception {
+		try (StubServer server = new StubServer(
+				200, "#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=48000\nmedia/48k.m3u8\n#EXT-X-STREAM-INF:BANDWIDTH=96000\nmedia/96k.m3u8\n",
+				200, MEDIA)) {
+			HlsPlaylist playlist = new HlsClient(0, TIMEOUT).getPlaylist(server.uri("/live/master.m3u8"));
+
+			Assertions.assertFalse(playlist.isMaster());
+			Assertions.assertEquals(server.uri("/live/media/48k.m3u8"), playlist.getUri());
+			Assertions.assertEquals(server.uri("/live/media/0.ts"), playlist.getSegments().get(0).getUri());
+			Assertions.assertEquals(List.of("/live/master.m3u8", "/live/media/48k.m3u8"), server.paths);
+		}
+	}
+
+	/**
+	 * バリアントの無いマスタープレイリストは取得失敗
+	 * {@link cyou.obliquerays.media.hls.HlsClient#getPlaylist(URI)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testGetPlaylistWithoutVariant() throws Exception {
+		try (StubServer server = new StubServer(200, "#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=48000\n")) {
+			IOException e = Assertions.assertThrows(IOException.class,
+					() -> new HlsClient(0, TIMEOUT).getPlaylist(server.uri("/master.m3u8")));
+			Assertions.assertTrue(e.getMessage().contains("バリアントなし"));
+		}
+	}
+
+	/**
+	 * サーバーエラーは再試行回数まで再試行
+	 * {@link cyou.obliquerays.media.hls.HlsClient#getPlaylist(URI)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testRetry() throws Exception {
+		try (StubServer server = new StubServer(503, "", 429, "", 200, MEDIA)) {
+			HlsPlaylist playlist = new HlsClient(2, TIMEOUT).getPlaylist(server.uri("/vod/index.m3u8"));
+
+			Assertions.assertTrue(playlist.isEndList());
+			Assertions.assertEquals(3, server.paths.size());
+		}
+		try (StubServer server = new StubServer(500, "", 502, "", 503, "", 200, MEDIA)) {
+			IOException e = Assertions.assertThrows(IOException.class,
+					() -> new HlsClient(2, TIMEOUT).getPlaylist(server.uri("/vod/index.m3u8")));
+			Assertions.assertTrue(e.getMessage().contains("503"));
+			Assertions.assertEquals(3, server.paths.size());
+		}
+	}
+
+	/**
+	 * クライアントエラーは再試行しない
+	 * {@link cyou.obliquerays.media.hls.HlsClient#getSegment(HlsSegment)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testClientError() throws Exception {
+		try (StubServer server = new StubServer(404, "", 200, "")) {
+			HlsSegment segment = new HlsSegment(0L, server.uri("/vod/0.ts"), 5d, false, null);
+			IOException e = Assertions.assertThrows(IOException.class, () -> new HlsClient(2, TIMEOUT).getSegment(segment));
+			Assertions.assertTrue(e.getMessage().contains("404"));
+			Assertions.assertEquals(1, server.paths.size());
+		}
+	}
+
+	/**
+	 * 1接続に1レスポンスを順番に返すHTTPサーバー、{@link LiveHlsSourceTest}でも使用
+	 */
+	static final class StubServer implements AutoCloseable {
+
+		/** 待ち受けソケット */
+		private final ServerSocket socket;
+
+		/** ステータスコードとレスポンスボディ */
+		private final Deque<Object[]> responses = new ArrayDeque<>();
+
+		/** 受信したリクエストのパス */
+		final List<String> paths = new CopyOnWriteArrayList<>();
+
+		/**
+		 * コンストラクタ
+		 * @param _responses ステータスコードとレスポンスボディの組
+		 * @throws IOException 待ち受け失敗
+		 */
+		StubServer(Object... _responses) throws IOException {
+			for (int i = 0; i < _responses.length; i += 2)
+				this.responses.add(new Object[] {_responses[i], _responses[i + 1]});
+			this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread thread = new Thread(this::serve, "stub-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * リクエスト先のURI
+		 * @param _path パス
+		 * @return URI
+		 */
+		URI uri(String _path) {
+			return URI.create("http://127.0.0.1:" + this.socket.getLocalPort() + _path);
+		}
+
+		/** 接続ごとにリクエストを読み取り、次のレスポンスを返して切断 */
+		private void serve() {
+			while (!this.socket.isClosed()) {
+				try (Socket client = this.socket.accept()) {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.ISO_8859_1));
+					String line = reader.readLine();
+					if (line == null)
+						continue;
+					this.paths.add(line.split(" ")[1]);
+					while ((line = reader.readLine()) != null && !line.isEmpty())
+						continue;
+					Object[] response;
+					synchronized (this.responses) {
+						response = this.responses.isEmpty() ? new Object[] {500, ""} : this.responses.poll();
+					}
+					byte[] body = ((String) response[1]).getBytes(StandardCharsets.UTF_8);
+					OutputStream out = client.getOutputStream();
+					out.write(("HTTP/1.1 " + response[0] + " STUB\r\nContent-Length: " + body.length
+							+ "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+					out.write(body);
+					out.flush();
+				} catch (IOException e) {
+					LOG.log(Level.DEBUG, "スタブサーバー終了", e);
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.socket.close();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** HlsPlaylistのUnitTest */
+class HlsPlaylistTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(HlsPlaylistTest.class.getName());
+
+	/** プレイリストのURI */
+	private static final URI BASE = URI.create("https://radio.example.jp/hls/live/nhkradiruakr2/master.m3u8");
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * マスタープレイリストのバリアントを相対URIから解決
+	 * {@link cyou.obliquerays.media.hls.HlsPlaylist#parse(URI, String)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testParseMaster() {
+		HlsPlaylist playlist = HlsPlaylist.parse(BASE, String.join("\r\n",
+				"#EXTM3U",
+				"#EXT-X-VERSION:3",
+				"#EXT-X-STREAM-INF:BANDWIDTH=48000,CODECS=\"mp4a.40.5\"",
+				"master48k.m3u8",
+				"#EXT-X-STREAM-INF:BANDWIDTH=96000,CODECS=\"mp4a.40.2\"",
+				"/hls/live/nhkradiruakr2/master96k.m3u8",
+				""));
+
+		Assertions.assertTrue(playlist.isMaster());
+		Assertions.assertEquals(List.of(
+				URI.create("https://radio.example.jp/hls/live/nhkradiruakr2/master48k.m3u8"),
+				URI.create("https://radio.example.jp/hls/live/nhkradiruakr2/master96k.m3u8")), playlist.getVariants());
+		Assertions.assertTrue(playlist.getSegments().isEmpty());
+	}
+
+	/**
+	 * URIの無いバリアントだけのマスタープレイリストはメディアプレイリストと区別
+	 * {@link cyou.obliquerays.media.hls.HlsPlaylist#parse(URI, String)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testParseMasterWithoutVariant() {
+		HlsPlaylist playlist = HlsPlaylist.parse(BASE, "#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=48000\n");
+
+		Assertions.assertTrue(playlist.isMaster());
+		Assertions.assertTrue(playlist.getVariants().isEmpty());
+	}
+
+	/**
+	 * ライブ配信のメディアプレイリストのメディアシーケンス番号、不連続点、放送時刻
+	 * {@link cyou.obliquerays.media.hls.HlsPlaylist#parse(URI, String)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testParseLive() {
+		HlsPlaylist playlist = HlsPlaylist.parse(BASE.resolve("master48k.m3u8"), String.join("\n",
+				"#EXTM3U",
+				"#EXT-X-VERSION:3",
+				"#EXT-X-TARGETDURATION:5",
+				"#EXT-X-MEDIA-SEQUENCE:1200",
+				"#EXT-X-DISCONTINUITY-SEQUENCE:3",
+				"#EXT-X-PROGRAM-DATE-TIME:2022-06-20T06:00:00.000+09:00",
+				"#EXTINF:5.005,",
+				"master48k/01200.ts",
+				"#EXTINF:4.995,",
+				"master48k/01201.ts",
+				"#EXT-X-DISCONTINUITY",
+				"#EXTINF:5,title",
+				"https://mirror.example.jp/master48k/01202.ts"));
+
+		Assertions.assertFalse(playlist.isMaster());
+		Assertions.assertFalse(playlist.isEndList());
+		Assertions.assertFalse(playlist.isEncrypted());
+		Assertions.assertEquals(5L, playlist.getTargetDuration());
+
+		List<HlsSegment> segments = playlist.getSegments();
+		Assertions.assertEquals(3, segments.size());
+		Assertions.assertEquals(1200L, segments.get(0).getSequence());
+		Assertions.assertEquals(1202L, segments.get(2).getSequence());
+		Assertions.assertEquals(URI.create("https://radio.example.jp/hls/live/nhkradiruakr2/master48k/01201.ts"), segments.get(1).getUri());
+		Assertions.assertEquals(URI.create("https://mirror.example.jp/master48k/01202.ts"), segments.get(2).getUri());
+		Assertions.assertEquals(5.005d, segments.get(0).getDuration(), 0.0001d);
+		Assertions.assertEquals(5d, segments.get(2).getDuration(), 0.0001d);
+
+		// #EXT-X-DISCONTINUITY-SEQUENCEは不連続点ではない
+		Assertions.assertFalse(segments.get(0).isDiscontinuity());
+		Assertions.assertFalse(segments.get(1).isDiscontinuity());
+		Assertions.assertTrue(segments.get(2).isDiscontinuity());
+
+		// 2番目以降の放送時刻は直前のセグメントの再生時間を加算
+		Assertions.assertEquals(Instant.parse("2022-06-19T21:00:00Z"), segments.get(0).getProgramDateTime());
+		Assertions.assertEquals(Instant.parse("2022-06-19T21:00:05.005Z"), segments.get(1).getProgramDateTime());
+		Assertions.assertEquals(Instant.parse("2022-06-19T21:00:10Z"), segments.get(2).getProgramDateTime());
+	}
+
+	/**
+	 * オンデマンド配信の終端タグと暗号化
+	 * {@link cyou.obliquerays.media.hls.HlsPlaylist#parse(URI, String)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testParseVod() {
+		HlsPlaylist plain = HlsPlaylist.parse(BASE, String.join("\n",
+				"#EXTM3U",
+				"#EXT-X-TARGETDURATION:10",
+				"#EXT-X-KEY:METHOD=NONE",
+				"#EXTINF:10.0,",
+				"0.ts",
+				"#EXTINF:3.5,",
+				"1.ts",
+				"#EXT-X-ENDLIST"));
+		Assertions.assertTrue(plain.isEndList());
+		Assertions.assertFalse(plain.isEncrypted());
+		Assertions.assertEquals(0L, plain.getSegments().get(0).getSequence());
+		Assertions.assertNull(plain.getSegments().get(0).getProgramDateTime());
+
+		HlsPlaylist encrypted = HlsPlaylist.parse(BASE, String.join("\n",
+				"#EXTM3U",
+				"#EXT-X-KEY:METHOD=AES-128,URI=\"key.bin\"",
+				"#EXTINF:10.0,",
+				"0.ts",
+				"#EXT-X-ENDLIST"));
+		Assertions.assertTrue(encrypted.isEncrypted());
+	}
+
+	/**
+	 * HLSのプレイリストではない
+	 * {@link cyou.obliquerays.media.hls.HlsPlaylist#parse(URI, String)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testParseInvalid() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> HlsPlaylist.parse(BASE, "<html></html>"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> HlsPlaylist.parse(BASE, ""));
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** LiveHlsSourceのUnitTest */
+class LiveHlsSourceTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(LiveHlsSourceTest.class.getName());
+
+	/** 録音中のミラー */
+	private static final URI PRIMARY = URI.create("https://primary.example.jp/hls/live/nhkradiruakr2/master48k.m3u8");
+
+	/** 切り替え先のミラー */
+	private static final URI SECONDARY = URI.create("https://secondary.example.jp/hls/live/nhkradiruakr2/master48k.m3u8");
+
+	/** 最初のセグメントの放送時刻 */
+	private static final Instant T0 = Instant.parse("2022-06-19T21:00:00Z");
+
+	/** テスト対象 */
+	private final LiveHlsSource source = new LiveHlsSource(new HlsClient(1, Duration.ofSeconds(1L)), new MirrorSelector(List.of(PRIMARY, SECONDARY)));
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 5秒のセグメントが続くメディアプレイリスト
+	 * @param _uri ミラーのURI
+	 * @param _sequence 最初のセグメントのメディアシーケンス番号
+	 * @param _programDateTime 最初のセグメントの放送時刻、無い場合はnull
+	 * @param _count セグメント数
+	 * @return メディアプレイリスト
+	 */
+	static HlsPlaylist playlist(URI _uri, long _sequence, Instant _programDateTime, int _count) {
+		StringBuilder text = new StringBuilder("#EXTM3U\n#EXT-X-TARGETDURATION:5\n#EXT-X-MEDIA-SEQUENCE:").append(_sequence).append('\n');
+		if (Objects.nonNull(_programDateTime))
+			text.append("#EXT-X-PROGRAM-DATE-TIME:").append(_programDateTime).append('\n');
+		for (int i = 0; i < _count; i++)
+			text.append("#EXTINF:5.0,\n").append(_sequence + i).append(".ts\n");
+		return HlsPlaylist.parse(_uri, text.toString());
+	}
+
+	/**
+	 * 受信開始時は最新の3セグメントから、以降はメディアシーケンス番号の続きを受信
+	 * {@link cyou.obliquerays.media.hls.LiveHlsSource#fresh(HlsPlaylist, HlsSegment, boolean)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testFresh() {
+		HlsPlaylist first = playlist(PRIMARY, 100L, T0, 6);
+		List<HlsSegment> start = this.source.fresh(first, null, false);
+		Assertions.assertEquals(List.of(103L, 104L, 105L), start.stream().map(HlsSegment::getSequence).toList());
+
+		HlsPlaylist next = playlist(PRIMARY, 102L, T0.plusSeconds(10L), 6);
+		List<HlsSegment> fresh = this.source.fresh(next, start.get(2), false);
+		Assertions.assertEquals(List.of(106L, 107L), fresh.stream().map(HlsSegment::getSequence).toList());
+		Assertions.assertFalse(fresh.get(0).isDiscontinuity());
+		Assertions.assertTrue(this.source.fresh(first, start.get(2), false).isEmpty());
+	}
+
+	/**
+	 * メディアシーケンス番号が異なるミラーへの切り替えは放送時刻で続きのセグメントに揃える
+	 * {@link cyou.obliquerays.media.hls.LiveHlsSource#fresh(HlsPlaylist, HlsSegment, boolean)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testFreshSwitchedAligned() {
+		HlsSegment last = playlist(PRIMARY, 100L, T0, 6).getSegments().get(5);
+		HlsPlaylist mirror = playlist(SECONDARY, 5000L, T0.plusSeconds(15L), 6);
+
+		List<HlsSegment> fresh = this.source.fresh(mirror, last, true);
+		Assertions.assertEquals(List.of(5003L, 5004L, 5005L), fresh.stream().map(HlsSegment::getSequence).toList());
+		Assertions.assertEquals(T0.plusSeconds(30L), fresh.get(0).getProgramDateTime());
+		Assertions.assertFalse(fresh.get(0).isDiscontinuity());
+		Assertions.assertTrue(this.source.fresh(playlist(SECONDARY, 4990L, T0.minusSeconds(35L), 6), last, true).isEmpty());
+	}
+
+	/**
+	 * 切り替え先のミラーで続きのセグメントが欠落している場合は欠落後のセグメントを不連続として受信
+	 * {@link cyou.obliquerays.media.hls.LiveHlsSource#fresh(HlsPlaylist, HlsSegment, boolean)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testFreshSwitchedGap() {
+		HlsSegment last = playlist(PRIMARY, 100L, T0, 6).getSegments().get(5);
+		HlsPlaylist mirror = playlist(SECONDARY, 5000L, T0.plusSeconds(60L), 3);
+
+		List<HlsSegment> fresh = this.source.fresh(mirror, last, true);
+		Assertions.assertEquals(List.of(5000L, 5001L, 5002L), fresh.stream().map(HlsSegment::getSequence).toList());
+		Assertions.assertTrue(fresh.get(0).isDiscontinuity());
+		Assertions.assertFalse(fresh.get(1).isDiscontinuity());
+	}
+
+	/**
+	 * 放送時刻の無いミラーへの切り替えはメディアシーケンス番号で続きを探し、不明な場合は最新のセグメントを不連続として受信
+	 * {@link cyou.obliquerays.media.hls.LiveHlsSource#fresh(HlsPlaylist, HlsSegment, boolean)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testFreshSwitchedWithoutProgramDateTime() {
+		HlsSegment last = playlist(PRIMARY, 100L, null, 6).getSegments().get(5);
+
+		List<HlsSegment> aligned = this.source.fresh(playlist(SECONDARY, 103L, null, 6), last, true);
+		Assertions.assertEquals(List.of(106L, 107L, 108L), aligned.stream().map(HlsSegment::getSequence).toList());
+		Assertions.assertFalse(aligned.get(0).isDiscontinuity());
+
+		List<HlsSegment> unknown = this.source.fresh(playlist(SECONDARY, 5000L, null, 6), last, true);
+		Assertions.assertEquals(List.of(5005L), unknown.stream().map(HlsSegment::getSequence).toList());
+		Assertions.assertTrue(unknown.get(0).isDiscontinuity());
+	}
+
+	/**
+	 * 出力先への出力失敗はミラーの障害とせずに呼び出し元へ通知
+	 * {@link cyou.obliquerays.media.hls.LiveHlsSource#stream(HlsSegmentSink, Instant)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testStreamSinkFailure() throws Exception {
+		String media = "#EXTM3U\n#EXT-X-TARGETDURATION:5\n#EXT-X-MEDIA-SEQUENCE:100\n#EXTINF:5.0,\n100.ts\n";
+		try (HlsClientTest.StubServer server = new HlsClientTest.StubServer(200, media, 200, media, 200, "segment")) {
+			MirrorSelector selector = new MirrorSelector(List.of(server.uri("/live/media.m3u8")));
+			LiveHlsSource live = new LiveHlsSource(new HlsClient(0, Duration.ofSeconds(5L)), selector);
+
+			IOException e = Assertions.assertThrows(IOException.class, () -> live.stream((segment, data) -> {
+				throw new IOException("Broken pipe");
+			}, Instant.now().plusSeconds(30L)));
+			Assertions.assertEquals("Broken pipe", e.getMessage());
+			Assertions.assertEquals(List.of("/live/media.m3u8", "/live/media.m3u8", "/live/100.ts"), server.paths);
+			Assertions.assertFalse(selector.isDegraded(selector.getMirrors().get(0)));
+		}
+	}
+}
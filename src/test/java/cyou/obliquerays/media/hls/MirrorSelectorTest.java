@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.hls;
+
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** MirrorSelectorのUnitTest */
+class MirrorSelectorTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(MirrorSelectorTest.class.getName());
+
+	/** 録音中のミラー */
+	private static final URI PRIMARY = URI.create("https://primary.example.jp/hls/live/nhkradiruakr2/master48k.m3u8");
+
+	/** 待機中のミラー */
+	private static final URI SECONDARY = URI.create("https://secondary.example.jp/hls/live/nhkradiruakr2/master48k.m3u8");
+
+	/** 最初のセグメントの放送時刻 */
+	private static final Instant T0 = Instant.parse("2022-06-19T21:00:00Z");
+
+	/** 応答時間 */
+	private static final Duration LATENCY = Duration.ofMillis(50L);
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 経過秒数の{@link System#nanoTime()}相当の値
+	 * @param _seconds 経過秒数
+	 * @return ナノ秒
+	 */
+	private static long at(long _seconds) {
+		return TimeUnit.SECONDS.toNanos(_seconds);
+	}
+
+	/**
+	 * 同じプレイリストを同じ応答時間で取得したミラーは受信中か待機中かに関わらず同じスコア
+	 * {@link cyou.obliquerays.media.hls.MirrorHealth#score()} のためのテスト・メソッド。
+	 */
+	@Test
+	void testScoreSameMeasurement() {
+		MirrorSelector selector = new MirrorSelector(List.of(PRIMARY, SECONDARY));
+		MirrorHealth primary = selector.getMirrors().get(0);
+		MirrorHealth secondary = selector.getMirrors().get(1);
+		for (int i = 0; i < 6; i++) {
+			primary.success(LiveHlsSourceTest.playlist(PRIMARY, 100L + i, T0.plusSeconds(5L * i), 6), LATENCY, at(5L * i));
+			if (i % 3 == 0)
+				secondary.success(LiveHlsSourceTest.playlist(SECONDARY, 5000L + i, T0.plusSeconds(5L * i), 6), LATENCY, at(5L * i));
+		}
+		Assertions.assertEquals(primary.score(), secondary.score(), 0.001d);
+		Assertions.assertEquals(50d, primary.score(), 0.001d);
+		Assertions.assertFalse(selector.isDegraded(primary));
+	}
+
+	/**
+	 * 最新セグメントが更新されないミラーは停滞時間の分だけスコアが悪化し、切り替え対象
+	 * {@link cyou.obliquerays.media.hls.MirrorSelector#isDegraded(MirrorHealth)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testIsDegradedStall() {
+		MirrorSelector selector = new MirrorSelector(List.of(PRIMARY, SECONDARY));
+		MirrorHealth primary = selector.getMirrors().get(0);
+		MirrorHealth secondary = selector.getMirrors().get(1);
+		HlsPlaylist stalled = LiveHlsSourceTest.playlist(PRIMARY, 100L, T0, 6);
+		for (int i = 0; i < 12; i++) {
+			primary.success(stalled, LATENCY, at(5L * i));
+			secondary.success(LiveHlsSourceTest.playlist(SECONDARY, 5000L + i, T0.plusSeconds(5L * i), 6), LATENCY, at(5L * i));
+		}
+		Assertions.assertTrue(primary.score() > secondary.score() + 10_000d, primary.toString());
+		Assertions.assertTrue(selector.isDegraded(primary));
+		Assertions.assertSame(secondary, selector.best(primary));
+		Assertions.assertFalse(selector.isDegraded(secondary));
+	}
+
+	/**
+	 * 連続エラーのミラーは劣化、ミラーが1つだけの場合は劣化判定しない
+	 * {@link cyou.obliquerays.media.hls.MirrorSelector#isDegraded(MirrorHealth)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testIsDegradedErrors() {
+		MirrorSelector selector = new MirrorSelector(List.of(PRIMARY, SECONDARY));
+		MirrorHealth primary = selector.getMirrors().get(0);
+		primary.success(LiveHlsSourceTest.playlist(PRIMARY, 100L, T0, 6), LATENCY, at(0L));
+		selector.getMirrors().get(1).success(LiveHlsSourceTest.playlist(SECONDARY, 100L, T0, 6), LATENCY, at(0L));
+		primary.error();
+		primary.error();
+		Assertions.assertEquals(2, primary.getConsecutiveErrors());
+		Assertions.assertTrue(selector.isDegraded(primary));
+
+		MirrorSelector single = new MirrorSelector(List.of(PRIMARY));
+		single.getMirrors().get(0).error();
+		single.getMirrors().get(0).error();
+		Assertions.assertFalse(single.isDegraded(single.getMirrors().get(0)));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new MirrorSelector(List.of()));
+	}
+}
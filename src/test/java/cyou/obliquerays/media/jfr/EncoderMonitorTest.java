@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.jfr;
+
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** EncoderMonitorのUnitTest */
+class EncoderMonitorTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(EncoderMonitorTest.class.getName());
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 実行中のプロセスのRSS、存在しないプロセスは-1
+	 * {@link cyou.obliquerays.media.jfr.EncoderMonitor#residentSetSize(long)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testResidentSetSize() {
+		Assumptions.assumeTrue(Files.isReadable(Path.of("/proc/self/status")));
+
+		long rss = EncoderMonitor.residentSetSize(ProcessHandle.current().pid());
+		LOG.log(Level.INFO, "RSS = " + rss);
+		Assertions.assertTrue(rss > 0L);
+		Assertions.assertEquals(0L, rss % 1024L);
+		Assertions.assertEquals(-1L, EncoderMonitor.residentSetSize(Long.MAX_VALUE));
+	}
+
+	/**
+	 * FFMPEGの出力からセグメントファイルの読み込みだけを数える
+	 * {@link cyou.obliquerays.media.jfr.EncoderMonitor#onOutput(String)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testOnOutput() {
+		try (EncoderMonitor monitor = new EncoderMonitor(Path.of("english0-20220620.mp3"), ProcessHandle.current())) {
+			Assertions.assertEquals(0, monitor.getSegments());
+
+			monitor.onOutput("[hls @ 0x55d0c8a3e6c0] Opening 'https://radio-stream.nhk.jp/hls/live/2023501/nhkradiruakr2/master.m3u8' for reading");
+			monitor.onOutput("[hls @ 0x55d0c8a3e6c0] Opening 'https://radio-stream.nhk.jp/hls/live/2023501/nhkradiruakr2/master48k.m3u8' for reading");
+			Assertions.assertEquals(0, monitor.getSegments());
+
+			monitor.onOutput("[hls @ 0x55d0c8a3e6c0] Opening 'https://radio-stream.nhk.jp/hls/live/2023501/nhkradiruakr2/master48k/00001.ts' for reading");
+			monitor.onOutput("[https @ 0x55d0c8a44a80] Opening 'https://radio-stream.nhk.jp/hls/live/2023501/nhkradiruakr2/master48k/00002.aac' for reading");
+			Assertions.assertEquals(2, monitor.getSegments());
+
+			monitor.onOutput("size=     128kB time=00:00:03.29 bitrate= 318.6kbits/s speed=1.01x");
+			monitor.onOutput("Stream #0:0: Audio: aac (LC), 48000 Hz, stereo, fltp");
+			monitor.onOutput("Opening ''");
+			Assertions.assertEquals(2, monitor.getSegments());
+
+			monitor.onSegment("pipe:0");
+			Assertions.assertEquals(3, monitor.getSegments());
+			monitor.finish(0, 0L);
+		}
+	}
+
+	/**
+	 * JFRの定期イベントに関係なく出力の途絶を停滞と判定し、出力があれば解除
+	 * {@link cyou.obliquerays.media.jfr.EncoderMonitor#checkStall(long)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testCheckStall() {
+		try (EncoderMonitor monitor = new EncoderMonitor(Path.of("english0-20220620.mp3"), ProcessHandle.current())) {
+			long now = System.nanoTime();
+			Assertions.assertFalse(monitor.checkStall(now));
+			Assertions.assertTrue(monitor.checkStall(now + Duration.ofSeconds(11L).toNanos()));
+			Assertions.assertTrue(monitor.checkStall(now + Duration.ofSeconds(20L).toNanos()));
+
+			monitor.onOutput("size=     128kB time=00:00:03.29 bitrate= 318.6kbits/s speed=1.01x");
+			Assertions.assertFalse(monitor.checkStall(System.nanoTime()));
+		}
+	}
+}
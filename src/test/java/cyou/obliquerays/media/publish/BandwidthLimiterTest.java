@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.publish;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** BandwidthLimiterのUnitTest */
+class BandwidthLimiterTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(BandwidthLimiterTest.class.getName());
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 1回の読み取りはチャンク以下、チャンクごとに待機して上限の速度で送信
+	 * {@link cyou.obliquerays.media.publish.BandwidthLimiter#limit(InputStream)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testLimit() throws Exception {
+		BandwidthLimiter limiter = new BandwidthLimiter(BandwidthLimiter.CHUNK * 10L);
+		byte[] data = new byte[BandwidthLimiter.CHUNK * 4];
+		byte[] buffer = new byte[data.length];
+		long start = System.nanoTime();
+		int total = 0;
+		int reads = 0;
+		try (InputStream in = limiter.limit(new ByteArrayInputStream(data))) {
+			for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+				Assertions.assertTrue(length <= BandwidthLimiter.CHUNK);
+				total += length;
+				reads++;
+			}
+		}
+		Assertions.assertEquals(data.length, total);
+		Assertions.assertEquals(4, reads);
+		Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250L);
+	}
+
+	/**
+	 * 無制限の場合はそのままの入力ストリーム
+	 * {@link cyou.obliquerays.media.publish.BandwidthLimiter#limit(InputStream)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testUnlimited() {
+		InputStream in = new ByteArrayInputStream(new byte[1]);
+		Assertions.assertSame(in, BandwidthLimiter.UNLIMITED.limit(in));
+		Assertions.assertSame(in, new BandwidthLimiter(0L).limit(in));
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.publish;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** ObjectStoragePublisherのUnitTest */
+class ObjectStoragePublisherTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(ObjectStoragePublisherTest.class.getName());
+
+	/** 最小のパートのサイズ */
+	private static final int PART_SIZE = 5 * 1024 * 1024;
+
+	/** 録音ファイル保存ディレクトリ */
+	@TempDir
+	Path baseDir;
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 3パートになる録音ファイル
+	 * @return 録音ファイル
+	 * @throws Exception
+	 */
+	private Path recording() throws Exception {
+		byte[] data = new byte[PART_SIZE * 2 + 1000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 31 + (i >> 12));
+		return Files.write(this.baseDir.resolve("english1-20220620.mp3"), data);
+	}
+
+	/**
+	 * 送信済みのパートを状態ファイルから復元し、残りのパートだけを同じアップロードIDで送信
+	 * {@link cyou.obliquerays.media.publish.ObjectStoragePublisher#resume(Path)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testResume() throws Exception {
+		Path file = this.recording();
+		Properties state = new Properties();
+		state.setProperty("key", "radio/english1-20220620.mp3");
+		state.setProperty("size", String.valueOf(Files.size(file)));
+		state.setProperty("modified", String.valueOf(Files.getLastModifiedTime(file).toMillis()));
+		state.setProperty("partSize", String.valueOf(PART_SIZE));
+		state.setProperty("uploadId", "upload-0");
+		state.setProperty("part.1", "\"etag-1\"");
+		Path statePath = this.baseDir.resolve("english1-20220620.mp3.upload");
+		try (OutputStream out = Files.newOutputStream(statePath)) {
+			state.store(out, null);
+		}
+
+		try (S3Stub server = new S3Stub();
+				ObjectStoragePublisher publisher = new ObjectStoragePublisher(server.client(), "radio/", PART_SIZE, 2, 0L, false, () -> false)) {
+			publisher.resume(this.baseDir);
+			Assertions.assertTrue(publisher.await(1L, TimeUnit.MINUTES));
+
+			Assertions.assertEquals(List.of(
+					"POST /bucket/radio/english1-20220620.mp3?uploadId=upload-0",
+					"PUT /bucket/radio/english1-20220620.mp3?partNumber=2&uploadId=upload-0",
+					"PUT /bucket/radio/english1-20220620.mp3?partNumber=3&uploadId=upload-0"),
+					server.requests.stream().sorted().toList());
+			String complete = server.bodies.get(server.bodies.size() - 1);
+			Assertions.assertTrue(complete.startsWith("<CompleteMultipartUpload><Part><PartNumber>1</PartNumber><ETag>\"etag-1\"</ETag></Part>"), complete);
+			Assertions.assertTrue(complete.contains("<PartNumber>3</PartNumber><ETag>\"" + S3Stub.md5(Files.readAllBytes(file), PART_SIZE * 2, 1000) + "\"</ETag>"), complete);
+		}
+		Assertions.assertFalse(Files.exists(statePath));
+		Assertions.assertTrue(Files.exists(file));
+	}
+
+	/**
+	 * 失敗したアップロードは再試行間隔を空けて再試行
+	 * {@link cyou.obliquerays.media.publish.ObjectStoragePublisher#submit(Path)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testSubmitRetry() throws Exception {
+		Path file = this.recording();
+		try (S3Stub server = new S3Stub();
+				ObjectStoragePublisher publisher = new ObjectStoragePublisher(server.client(), "radio/", PART_SIZE, 2, 0L, false, () -> false, Duration.ofMillis(10L))) {
+			server.failures = 2;
+			Assertions.assertEquals(file, publisher.submit(file).get(1L, TimeUnit.MINUTES));
+			Assertions.assertEquals(7, server.requests.size());
+			Assertions.assertEquals("POST /bucket/radio/english1-20220620.mp3?uploads=", server.requests.get(2));
+		}
+		Assertions.assertFalse(Files.exists(this.baseDir.resolve("english1-20220620.mp3.upload")));
+	}
+
+	/**
+	 * 予約時に状態ファイルを作成し、再試行しても失敗したアップロードはログに記録して次回起動時に再開
+	 * {@link cyou.obliquerays.media.publish.ObjectStoragePublisher#submit(Path)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testSubmitFailure() throws Exception {
+		Path file = this.recording();
+		Path statePath = this.baseDir.resolve("english1-20220620.mp3.upload");
+		URI closed;
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			closed = URI.create("http://127.0.0.1:" + socket.getLocalPort());
+		}
+		try (ObjectStoragePublisher publisher = new ObjectStoragePublisher(
+				new S3Client(closed, "us-east-1", "bucket", "access", "secret"), "radio/", PART_SIZE, 2, 0L, false, () -> false, Duration.ofMillis(10L))) {
+			Assertions.assertNull(publisher.submit(file).get());
+		}
+		Assertions.assertTrue(Files.exists(statePath));
+
+		try (S3Stub server = new S3Stub();
+				ObjectStoragePublisher publisher = new ObjectStoragePublisher(server.client(), "radio/", PART_SIZE, 2, 0L, true, () -> false)) {
+			publisher.resume(this.baseDir);
+			Assertions.assertTrue(publisher.await(1L, TimeUnit.MINUTES));
+			Assertions.assertEquals(5, server.requests.size());
+			Assertions.assertEquals("POST /bucket/radio/english1-20220620.mp3?uploads=", server.requests.get(0));
+		}
+		Assertions.assertFalse(Files.exists(statePath));
+		Assertions.assertFalse(Files.exists(file));
+	}
+
+	/**
+	 * マルチパートアップロードAPIだけに応答するS3互換のHTTPサーバー<br>
+	 * パートのETagは受信した内容のMD5
+	 */
+	static final class S3Stub implements AutoCloseable {
+
+		/** 待ち受けソケット */
+		private final ServerSocket socket;
+
+		/** 受信したリクエストのメソッドとパス */
+		final List<String> requests = new CopyOnWriteArrayList<>();
+
+		/** 受信したリクエストのヘッダー */
+		final List<Map<String, String>> headers = new CopyOnWriteArrayList<>();
+
+		/** 受信したリクエストボディ（パート以外） */
+		final List<String> bodies = new CopyOnWriteArrayList<>();
+
+		/** MD5と異なるETagを返す場合はtrue */
+		volatile boolean wrongEtag = false;
+
+		/** サーバーエラーを返す残りのリクエスト数 */
+		volatile int failures = 0;
+
+		/**
+		 * コンストラクタ
+		 * @throws IOException 待ち受け失敗
+		 */
+		S3Stub() throws IOException {
+			this.socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread thread = new Thread(this::serve, "s3-stub");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * スタブサーバーへ送信するクライアント
+		 * @return S3互換オブジェクトストレージ
+		 */
+		S3Client client() {
+			return this.client(Clock.systemUTC());
+		}
+
+		/**
+		 * スタブサーバーへ送信するクライアント
+		 * @param _clock 署名日時の時計
+		 * @return S3互換オブジェクトストレージ
+		 */
+		S3Client client(Clock _clock) {
+			return new S3Client(URI.create("http://127.0.0.1:" + this.socket.getLocalPort()), "us-east-1", "bucket", "access", "secret", _clock);
+		}
+
+		/**
+		 * MD5の16進数文字列
+		 * @param _data 計算対象
+		 * @param _offset 開始位置
+		 * @param _length 長さ
+		 * @return MD5
+		 * @throws Exception
+		 */
+		static String md5(byte[] _data, int _offset, int _length) throws Exception {
+			MessageDigest md5 = MessageDigest.getInstance("MD5");
+			md5.update(_data, _offset, _length);
+			return HexFormat.of().formatHex(md5.digest());
+		}
+
+		/**
+		 * CRLFまでの1行を読み取り
+		 * @param _in 入力
+		 * @return 1行、終端の場合はnull
+		 * @throws IOException 読み取り失敗
+		 */
+		private static String readLine(InputStream _in) throws IOException {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			for (int b = _in.read(); b >= 0; b = _in.read()) {
+				if (b == '\n')
+					return line.toString(StandardCharsets.ISO_8859_1).stripTrailing();
+				line.write(b);
+			}
+			return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+		}
+
+		/** 接続ごとにリクエストを読み取り、APIに応じたレスポンスを返して切断 */
+		private void serve() {
+			while (!this.socket.isClosed()) {
+				try (Socket client = this.socket.accept()) {
+					InputStream in = client.getInputStream();
+					String line = readLine(in);
+					if (line == null)
+						continue;
+					String[] request = line.split(" ");
+					Map<String, String> headers = new TreeMap<>();
+					while ((line = readLine(in)) != null && !line.isEmpty()) {
+						int colon = line.indexOf(':');
+						headers.put(line.substring(0, colon).strip().toLowerCase(Locale.ROOT), line.substring(colon + 1).strip());
+					}
+					byte[] body = in.readNBytes(Integer.parseInt(headers.getOrDefault("content-length", "0")));
+					this.requests.add(request[0] + " " + request[1]);
+					this.headers.add(headers);
+
+					int status = 200;
+					String etag = null;
+					String response = "";
+					if (this.failures > 0) {
+						this.failures--;
+						status = 500;
+					} else if (request[0].equals("PUT")) {
+						etag = "\"" + (this.wrongEtag ? "0".repeat(32) : md5(body, 0, body.length)) + "\"";
+					} else if (request[1].endsWith("?uploads=")) {
+						response = "<InitiateMultipartUploadResult><UploadId>upload-1</UploadId></InitiateMultipartUploadResult>";
+					} else {
+						this.bodies.add(new String(body, StandardCharsets.UTF_8));
+						response = "<CompleteMultipartUploadResult></CompleteMultipartUploadResult>";
+					}
+					byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+					OutputStream out = client.getOutputStream();
+					out.write(("HTTP/1.1 " + status + " STUB\r\nContent-Length: " + bytes.length
+							+ (etag == null ? "" : "\r\nETag: " + etag)
+							+ "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+					out.write(bytes);
+					out.flush();
+				} catch (Exception e) {
+					LOG.log(Level.DEBUG, "スタブサーバー終了", e);
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.socket.close();
+		}
+	}
+}
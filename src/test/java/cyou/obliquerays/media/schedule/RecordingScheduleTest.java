@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.schedule;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** RecordingScheduleのUnitTest */
+class RecordingScheduleTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(RecordingScheduleTest.class.getName());
+
+	/** 日本標準時 */
+	private static final ZoneId JST = ZoneId.of("Asia/Tokyo");
+
+	/** 平日23:58:10から翌日0:20まで */
+	private static final RecordingProgram NIGHT = new RecordingProgram("night",
+			EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY), LocalTime.of(23, 58, 10), LocalTime.of(0, 20));
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 日付をまたぐ番組は放送開始日の録音枠
+	 * {@link cyou.obliquerays.media.schedule.RecordingSchedule#decide(LocalDateTime, Set)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testDecideMidnightCrossing() {
+		RecordingProgram program = new RecordingProgram("late", EnumSet.of(DayOfWeek.SUNDAY), LocalTime.of(23, 30), LocalTime.of(0, 30));
+		RecordingSchedule schedule = new RecordingSchedule(List.of(program));
+
+		// 2022-06-20は月曜日、前日の日曜日23:30からの録音枠
+		RecordingDecision decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 0, 10), Set.of());
+		Assertions.assertTrue(decision.isRecord());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 19, 23, 30), decision.getSlot().getStart());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 20, 0, 30), decision.getSlot().getEnd());
+		Assertions.assertEquals(Duration.ofMinutes(20L), decision.getSlot().getDuration(LocalDateTime.of(2022, 6, 20, 0, 10)));
+
+		// 録音済みの場合は次の日曜日まで最大待機時間ずつ待機
+		Set<RecordingSlot> done = Set.of(decision.getSlot());
+		decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 0, 10), done);
+		Assertions.assertFalse(decision.isRecord());
+		Assertions.assertEquals(RecordingSchedule.MAX_WAIT, decision.getWait());
+
+		// 録音開始時間の2分前から録音
+		decision = schedule.decide(LocalDateTime.of(2022, 6, 26, 23, 20), done);
+		Assertions.assertFalse(decision.isRecord());
+		Assertions.assertEquals(Duration.ofMinutes(8L), decision.getWait());
+		decision = schedule.decide(LocalDateTime.of(2022, 6, 26, 23, 28), done);
+		Assertions.assertTrue(decision.isRecord());
+		Assertions.assertEquals(Duration.ofMinutes(60L), decision.getSlot().getDuration(LocalDateTime.of(2022, 6, 26, 23, 28)));
+	}
+
+	/**
+	 * 重なる番組は前の録音が終わってから遅れて録音
+	 * {@link cyou.obliquerays.media.schedule.RecordingSchedule#decide(LocalDateTime, Set)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testDecideOverlap() {
+		RecordingProgram first = new RecordingProgram("first", EnumSet.allOf(DayOfWeek.class), LocalTime.of(6, 0), LocalTime.of(6, 15));
+		RecordingProgram second = new RecordingProgram("second", EnumSet.allOf(DayOfWeek.class), LocalTime.of(6, 10), LocalTime.of(6, 20));
+		RecordingSchedule schedule = new RecordingSchedule(List.of(second, first));
+
+		RecordingDecision decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 5, 58), Set.of());
+		Assertions.assertTrue(decision.isRecord());
+		Assertions.assertEquals("first", decision.getSlot().getProgram().getTitle());
+
+		Set<RecordingSlot> done = Set.of(decision.getSlot());
+		decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 6, 15), done);
+		Assertions.assertTrue(decision.isRecord());
+		Assertions.assertEquals("second", decision.getSlot().getProgram().getTitle());
+		Assertions.assertEquals(Duration.ofMinutes(5L), decision.getSlot().getDuration(LocalDateTime.of(2022, 6, 20, 6, 15)));
+
+		// 録音終了時間の1分前を過ぎた番組は録音しない
+		decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 6, 19, 30), done);
+		Assertions.assertFalse(decision.isRecord());
+	}
+
+	/**
+	 * 開始時間の同じ番組は番組名の順に録音
+	 * {@link cyou.obliquerays.media.schedule.RecordingSchedule#decide(LocalDateTime, Set)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testDecideSameStart() {
+		RecordingProgram first = new RecordingProgram("a", EnumSet.allOf(DayOfWeek.class), LocalTime.of(6, 0), LocalTime.of(6, 15));
+		RecordingProgram second = new RecordingProgram("b", EnumSet.allOf(DayOfWeek.class), LocalTime.of(6, 0), LocalTime.of(6, 30));
+		RecordingSchedule schedule = new RecordingSchedule(List.of(second, first));
+
+		RecordingDecision decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 5, 58), Set.of());
+		Assertions.assertTrue(decision.isRecord());
+		Assertions.assertEquals("a", decision.getSlot().getProgram().getTitle());
+
+		decision = schedule.decide(LocalDateTime.of(2022, 6, 20, 6, 15), Set.of(decision.getSlot()));
+		Assertions.assertTrue(decision.isRecord());
+		Assertions.assertEquals("b", decision.getSlot().getProgram().getTitle());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 20, 6, 0), decision.getSlot().getStart());
+	}
+
+	/**
+	 * 録音時間が12時間を超える番組は設定誤り
+	 * {@link cyou.obliquerays.media.schedule.RecordingProgram#RecordingProgram(String, java.util.Set, LocalTime, LocalTime)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testProgramMaxDuration() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new RecordingProgram("day",
+				EnumSet.allOf(DayOfWeek.class), LocalTime.of(23, 55), LocalTime.of(23, 0)));
+		Assertions.assertEquals(RecordingProgram.MAX_DURATION, new RecordingProgram("half",
+				EnumSet.allOf(DayOfWeek.class), LocalTime.of(18, 0), LocalTime.of(6, 0)).getDuration());
+	}
+
+	/**
+	 * 録音失敗した枠は録音終了時間まで再試行
+	 * {@link cyou.obliquerays.media.schedule.RecordingScheduler#step()} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testStepRetry() throws Exception {
+		RecordingProgram program = new RecordingProgram("morning", EnumSet.allOf(DayOfWeek.class), LocalTime.of(6, 0), LocalTime.of(6, 15));
+		LocalDateTime from = LocalDateTime.of(2022, 6, 20, 5, 50);
+		SimulatedClock clock = new SimulatedClock(from.atZone(JST).toInstant(), JST);
+		AtomicInteger attempts = new AtomicInteger();
+		RecorderFactory factory = (slot, c) -> () -> {
+			if (attempts.incrementAndGet() == 1)
+				throw new IOException("FFMPEG異常終了");
+			clock.advance(slot.getDuration(LocalDateTime.now(c)));
+			return Path.of(slot.getStart().toLocalDate() + ".mp3");
+		};
+		RecordingScheduler scheduler = new RecordingScheduler(new RecordingSchedule(List.of(program)), clock, factory, Runnable::run);
+
+		// 録音開始時間の2分前まで待機
+		Assertions.assertNull(scheduler.step());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 20, 5, 58), LocalDateTime.now(clock));
+
+		// 録音失敗は再試行まで待機
+		Assertions.assertNull(scheduler.step());
+		Assertions.assertEquals(1, attempts.get());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 20, 5, 58).plus(RecordingScheduler.RETRY_WAIT), LocalDateTime.now(clock));
+
+		// 同じ録音枠を再試行して録音完了
+		Assertions.assertEquals(Path.of("2022-06-20.mp3"), scheduler.step());
+		Assertions.assertEquals(2, attempts.get());
+		Assertions.assertEquals(LocalDateTime.of(2022, 6, 20, 6, 13, 30), LocalDateTime.now(clock));
+
+		// 録音完了した枠は録音しない
+		Assertions.assertNull(scheduler.step());
+		Assertions.assertEquals(2, attempts.get());
+	}
+
+	/**
+	 * 1年分の録音予定の模擬実行
+	 * {@link cyou.obliquerays.media.schedule.ScheduleSimulator#run()} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testSimulateYear() throws Exception {
+		LocalDateTime from = LocalDateTime.of(2022, 1, 1, 0, 0);
+		SimulatedClock clock = new SimulatedClock(from.atZone(JST).toInstant(), JST);
+		RecorderFactory factory = (slot, c) -> () -> {
+			clock.advance(slot.getDuration(LocalDateTime.now(c)));
+			return Path.of(slot.getStart().toLocalDate() + ".mp3");
+		};
+		ScheduleSimulator.Report report = new ScheduleSimulator(new RecordingSchedule(List.of(NIGHT)), clock, from.plusYears(1L), factory).run();
+		LOG.log(Level.INFO, report);
+
+		// 2022年の平日260日と開始時点で放送中の2021-12-31の録音枠
+		Assertions.assertEquals(261, report.getRecordings());
+		Assertions.assertEquals(261, report.getMidnightCrossings());
+		Assertions.assertEquals(1, report.getLate());
+		Assertions.assertEquals(0, report.getMissed());
+	}
+
+	/**
+	 * 多数の番組の判定時間
+	 * {@link cyou.obliquerays.media.schedule.ScheduleSimulator#run()} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testSimulateManyPrograms() throws Exception {
+		LocalDateTime from = LocalDateTime.of(2022, 1, 1, 0, 0);
+		SimulatedClock clock = new SimulatedClock(from.atZone(JST).toInstant(), JST);
+		RecorderFactory factory = (slot, c) -> () -> {
+			clock.advance(slot.getDuration(LocalDateTime.now(c)));
+			return Path.of(slot.getStart().toLocalDate() + ".mp3");
+		};
+		List<RecordingProgram> programs = ScheduleSimulator.randomPrograms(2000, 0L);
+		ScheduleSimulator.Report report = new ScheduleSimulator(new RecordingSchedule(programs), clock, from.plusYears(1L), factory).run();
+		LOG.log(Level.INFO, report);
+
+		// 重なる番組は遅れて録音もしくは録音できない
+		Assertions.assertTrue(report.getRecordings() > 0);
+		Assertions.assertTrue(report.getLate() > 0);
+		Assertions.assertTrue(report.getMissed() > 0);
+		Assertions.assertTrue(report.getElapsed().compareTo(Duration.ofSeconds(30L)) < 0);
+	}
+}
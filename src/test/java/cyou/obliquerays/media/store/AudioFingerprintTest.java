@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** AudioFingerprintのUnitTest */
+class AudioFingerprintTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(AudioFingerprintTest.class.getName());
+
+	/** 特徴量の保存ディレクトリ */
+	@TempDir
+	Path baseDir;
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 音量と音程が変化する疑似音声
+	 * @param _seed 音声の種
+	 * @param _seconds 秒数
+	 * @return 8kHzモノラルのサンプル
+	 */
+	static short[] signal(long _seed, int _seconds) {
+		Random random = new Random(_seed);
+		short[] samples = new short[_seconds * AudioFingerprint.SAMPLE_RATE];
+		double envelope = 0.5d, tone = 200d, phase = 0d;
+		for (int i = 0; i < samples.length; i++) {
+			if (i % 400 == 0) {
+				envelope = Math.max(0.02d, Math.min(1d, envelope + random.nextGaussian() * 0.15d));
+				tone = Math.max(80d, Math.min(2000d, tone + random.nextGaussian() * 40d));
+			}
+			phase += 2d * Math.PI * tone / AudioFingerprint.SAMPLE_RATE;
+			samples[i] = (short) (envelope * (6000d * Math.sin(phase) + 3000d * random.nextGaussian()));
+		}
+		return samples;
+	}
+
+	/**
+	 * 疑似音声の一部をPCM（符号付き16ビットリトルエンディアン）に変換
+	 * @param _samples 疑似音声
+	 * @param _from 開始サンプル
+	 * @param _to 終了サンプル
+	 * @param _noise 加えるノイズの大きさ
+	 * @return PCM
+	 */
+	static byte[] pcm(short[] _samples, int _from, int _to, double _noise) {
+		Random random = new Random(_from);
+		byte[] pcm = new byte[(_to - _from) * 2];
+		for (int i = _from; i < _to; i++) {
+			int value = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, _samples[i] + random.nextGaussian() * _noise));
+			pcm[(i - _from) * 2] = (byte) value;
+			pcm[(i - _from) * 2 + 1] = (byte) (value >> 8);
+		}
+		return pcm;
+	}
+
+	/**
+	 * 疑似音声の一部の特徴量
+	 * @param _samples 疑似音声
+	 * @param _from 開始サンプル
+	 * @param _to 終了サンプル
+	 * @param _noise 加えるノイズの大きさ
+	 * @return 特徴量
+	 * @throws Exception
+	 */
+	static AudioFingerprint fingerprint(short[] _samples, int _from, int _to, double _noise) throws Exception {
+		return AudioFingerprint.read(new ByteArrayInputStream(pcm(_samples, _from, _to, _noise)));
+	}
+
+	/**
+	 * 録音開始時間がずれてノイズが加わった同じ音声は一致
+	 * {@link cyou.obliquerays.media.store.AudioFingerprint#matches(AudioFingerprint)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testMatchesShifted() throws Exception {
+		short[] samples = signal(1L, 600);
+		AudioFingerprint live = fingerprint(samples, 0, samples.length - 8000 * 30, 0d);
+		AudioFingerprint rebroadcast = fingerprint(samples, 8000 * 47 + 37, samples.length, 300d);
+		Assertions.assertTrue(live.matches(rebroadcast));
+		Assertions.assertTrue(rebroadcast.matches(live));
+		Assertions.assertEquals(Duration.ofSeconds(570L), live.getDuration());
+	}
+
+	/**
+	 * 別の音声は不一致
+	 * {@link cyou.obliquerays.media.store.AudioFingerprint#matches(AudioFingerprint)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testMatchesOther() throws Exception {
+		short[] samples = signal(1L, 300);
+		short[] other = signal(2L, 300);
+		Assertions.assertFalse(fingerprint(samples, 0, samples.length, 0d).matches(fingerprint(other, 0, other.length, 0d)));
+	}
+
+	/**
+	 * 無音同士は不一致
+	 * {@link cyou.obliquerays.media.store.AudioFingerprint#matches(AudioFingerprint)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testMatchesSilence() throws Exception {
+		short[] silence = new short[8000 * 60];
+		Assertions.assertFalse(fingerprint(silence, 0, silence.length, 0d).matches(fingerprint(silence, 0, silence.length, 0d)));
+		Assertions.assertTrue(AudioFingerprint.read(InputStream.nullInputStream()).isEmpty());
+	}
+
+	/**
+	 * 録音開始時間がずれた同じ音声は索引キーが重なり、別の音声や無音とはほぼ重ならない
+	 * {@link cyou.obliquerays.media.store.AudioFingerprint#keys()} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testKeys() throws Exception {
+		short[] samples = signal(1L, 600);
+		List<String> live = fingerprint(samples, 0, samples.length - 8000 * 30, 0d).keys();
+		List<String> rebroadcast = fingerprint(samples, 8000 * 47 + 37, samples.length, 300d).keys();
+		short[] other = signal(2L, 600);
+		List<String> different = fingerprint(other, 0, other.length, 0d).keys();
+		short[] silence = new short[8000 * 60];
+
+		Assertions.assertEquals(AudioFingerprint.KEYS, live.size());
+		Assertions.assertTrue(live.stream().filter(rebroadcast::contains).count() >= AudioFingerprint.KEYS / 4);
+		Assertions.assertTrue(live.stream().filter(different::contains).count() <= 1L);
+		Assertions.assertEquals(List.of(), fingerprint(silence, 0, silence.length, 0d).keys());
+	}
+
+	/**
+	 * 奇数バイトで分割されたPCMも同じ特徴量
+	 * {@link cyou.obliquerays.media.store.AudioFingerprint.Builder#update(byte[], int, int)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testUpdateOddLength() throws Exception {
+		short[] samples = signal(3L, 60);
+		byte[] pcm = pcm(samples, 0, samples.length, 0d);
+		AudioFingerprint.Builder builder = new AudioFingerprint.Builder();
+		for (int offset = 0; offset < pcm.length; offset += 1001)
+			builder.update(pcm, offset, Math.min(1001, pcm.length - offset));
+		Assertions.assertEquals(AudioFingerprint.read(new ByteArrayInputStream(pcm)).encode(), builder.build().encode());
+	}
+
+	/**
+	 * 保存した特徴量は録音ファイルより新しい場合だけ読み込み
+	 * {@link cyou.obliquerays.media.store.AudioFingerprint#load(Path)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testLoadSidecar() throws Exception {
+		short[] samples = signal(4L, 60);
+		AudioFingerprint fingerprint = fingerprint(samples, 0, samples.length, 0d);
+		Path mp3 = Files.createFile(this.baseDir.resolve("english1-20220620.mp3"));
+		fingerprint.write(AudioFingerprint.sidecar(mp3));
+		Assertions.assertEquals(this.baseDir.resolve(".english1-20220620.mp3.fp"), AudioFingerprint.sidecar(mp3));
+		Assertions.assertEquals(fingerprint.encode(), AudioFingerprint.load(mp3).encode());
+		Assertions.assertEquals(fingerprint.encode(), AudioFingerprint.decode(fingerprint.encode()).encode());
+	}
+}
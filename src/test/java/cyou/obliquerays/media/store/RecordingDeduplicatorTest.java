@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.LogManager;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** RecordingDeduplicatorのUnitTest */
+class RecordingDeduplicatorTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(RecordingDeduplicatorTest.class.getName());
+
+	/** 録音ファイル保存ディレクトリ */
+	@TempDir
+	Path baseDir;
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * ID3v2.3タグとMPEG1 Layer III 320kbps 48kHzのフレームを持つ疑似MP3ファイル
+	 * @param _title 番組名（TIT2）
+	 * @param _date 放送日（TDAT）
+	 * @return 疑似MP3ファイルの内容
+	 */
+	private static byte[] mp3(String _title, String _date) {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		for (String[] frame : new String[][] {{"TIT2", _title}, {"TDAT", _date}}) {
+			byte[] text = frame[1].getBytes(StandardCharsets.ISO_8859_1);
+			frames.writeBytes(frame[0].getBytes(StandardCharsets.ISO_8859_1));
+			frames.writeBytes(ByteBuffer.allocate(4).putInt(text.length + 1).array());
+			frames.writeBytes(new byte[] {0, 0, 0});
+			frames.writeBytes(text);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes(new byte[] {'I', 'D', '3', 3, 0, 0, 0, 0, 0, (byte) frames.size()});
+		out.writeBytes(frames.toByteArray());
+		for (int frame = 0; frame < 10; frame++) {
+			byte[] data = new byte[960];
+			data[0] = (byte) 0xFF;
+			data[1] = (byte) 0xFB;
+			data[2] = (byte) 0xE4;
+			out.writeBytes(data);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * 疑似音声の特徴量
+	 * @param _seed 音声の種
+	 * @param _offset 録音開始時間のずれ（秒）
+	 * @return 特徴量
+	 * @throws Exception
+	 */
+	private static AudioFingerprint fingerprint(long _seed, int _offset) throws Exception {
+		short[] samples = AudioFingerprintTest.signal(_seed, 300);
+		return AudioFingerprintTest.fingerprint(samples, _offset * AudioFingerprint.SAMPLE_RATE, samples.length - (30 - _offset) * AudioFingerprint.SAMPLE_RATE, 200d);
+	}
+
+	/**
+	 * 録音開始時間がずれた同じ音声でID3タグも同じ録音ファイルはハードリンクに置き換え
+	 * {@link cyou.obliquerays.media.store.RecordingDeduplicator#deduplicate(Path, AudioFingerprint)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testDeduplicateLink() throws Exception {
+		Path live = Files.write(this.baseDir.resolve("english1-20220620.mp3"), mp3("english", "2006"));
+		Path backfill = Files.write(this.baseDir.resolve("english1-20220620-backfill.mp3"), mp3("english", "2006"));
+		Path other = Files.write(this.baseDir.resolve("english1-20220621.mp3"), mp3("english", "2106"));
+
+		RecordingDeduplicator deduplicator = new RecordingDeduplicator(this.baseDir);
+		Assertions.assertFalse(deduplicator.deduplicate(live, fingerprint(1L, 0)));
+		Assertions.assertTrue(deduplicator.deduplicate(backfill, fingerprint(1L, 12)));
+		Assertions.assertFalse(deduplicator.deduplicate(other, fingerprint(2L, 0)));
+		Assertions.assertTrue(Files.isSameFile(live, backfill));
+		Assertions.assertFalse(Files.isSameFile(live, other));
+		try (Stream<Path> list = Files.list(this.baseDir)) {
+			Assertions.assertEquals(3L, list.filter(Files::isRegularFile).count());
+		}
+	}
+
+	/**
+	 * 放送日が異なる再放送の録音ファイルはハードリンクに置き換え、録音ファイル自身のID3タグを保存
+	 * {@link cyou.obliquerays.media.store.RecordingDeduplicator#deduplicate(Path, AudioFingerprint)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testDeduplicateRebroadcast() throws Exception {
+		byte[] monday = mp3("english", "2006");
+		byte[] friday = mp3("english", "2406");
+		Path first = Files.write(this.baseDir.resolve("english1-20220620.mp3"), monday);
+		Path second = Files.write(this.baseDir.resolve("english1-20220624.mp3"), friday);
+
+		RecordingDeduplicator deduplicator = new RecordingDeduplicator(this.baseDir);
+		Assertions.assertFalse(deduplicator.deduplicate(first, fingerprint(1L, 0)));
+		Assertions.assertTrue(deduplicator.deduplicate(second, fingerprint(1L, 5)));
+		Assertions.assertTrue(Files.isSameFile(first, second));
+		Assertions.assertArrayEquals(monday, Files.readAllBytes(first));
+		Assertions.assertFalse(Files.exists(RecordingDeduplicator.tagPath(first)));
+		Assertions.assertArrayEquals(Arrays.copyOf(friday, 10 + friday[9]), Files.readAllBytes(RecordingDeduplicator.tagPath(second)));
+
+		Properties entry = entry("english1-20220624.mp3");
+		Assertions.assertEquals(first.toAbsolutePath().normalize().toString(), entry.getProperty("duplicate"));
+		Assertions.assertEquals(RecordingDeduplicator.tagPath(second).toAbsolutePath().normalize().toString(), entry.getProperty("tags"));
+	}
+
+	/**
+	 * 番組名が異なる録音ファイルは同じ音声でも置き換えずに参照を記録
+	 * {@link cyou.obliquerays.media.store.RecordingDeduplicator#deduplicate(Path, AudioFingerprint)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testDeduplicateOtherProgram() throws Exception {
+		byte[] english = mp3("english", "2006");
+		byte[] review = mp3("review", "2606");
+		Path first = Files.write(this.baseDir.resolve("english1-20220620.mp3"), english);
+		Path second = Files.write(this.baseDir.resolve("review-20220626.mp3"), review);
+
+		RecordingDeduplicator deduplicator = new RecordingDeduplicator(this.baseDir);
+		Assertions.assertFalse(deduplicator.deduplicate(first, fingerprint(1L, 0)));
+		Assertions.assertTrue(deduplicator.deduplicate(second, fingerprint(1L, 5)));
+		Assertions.assertFalse(Files.isSameFile(first, second));
+		Assertions.assertArrayEquals(review, Files.readAllBytes(second));
+		Assertions.assertFalse(Files.exists(RecordingDeduplicator.tagPath(second)));
+		Assertions.assertEquals(first.toAbsolutePath().normalize().toString(), entry("review-20220626.mp3").getProperty("duplicate"));
+	}
+
+	/**
+	 * 音声データの無い録音ファイルは重複排除しない
+	 * {@link cyou.obliquerays.media.store.RecordingDeduplicator#deduplicate(Path)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testDeduplicateEmpty() throws Exception {
+		Path first = Files.write(this.baseDir.resolve("english1-20220620.mp3"), mp3("english", "2006"));
+		Path second = Files.write(this.baseDir.resolve("english1-20220621.mp3"), mp3("english", "2006"));
+		AudioFingerprint empty = AudioFingerprint.read(InputStream.nullInputStream());
+		empty.write(AudioFingerprint.sidecar(first));
+		empty.write(AudioFingerprint.sidecar(second));
+
+		RecordingDeduplicator deduplicator = new RecordingDeduplicator(this.baseDir);
+		Assertions.assertFalse(deduplicator.deduplicate(first));
+		Assertions.assertFalse(deduplicator.deduplicate(second));
+		Assertions.assertFalse(Files.isSameFile(first, second));
+		Assertions.assertFalse(Files.exists(AudioFingerprint.sidecar(first)));
+		Assertions.assertFalse(Files.exists(this.baseDir.resolve(".index")));
+	}
+
+	/**
+	 * 索引キーが一致した候補のうち録音ファイルが削除もしくは上書きされたインデックスは検索時に削除
+	 * {@link cyou.obliquerays.media.store.RecordingDeduplicator#deduplicate(Path, AudioFingerprint)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testPruneLazily() throws Exception {
+		Path first = Files.write(this.baseDir.resolve("english1-20220620.mp3"), mp3("english", "2006"));
+		Path second = Files.write(this.baseDir.resolve("english1-20220621.mp3"), mp3("english", "2106"));
+		RecordingDeduplicator deduplicator = new RecordingDeduplicator(this.baseDir);
+		deduplicator.deduplicate(first, fingerprint(1L, 0));
+		deduplicator.deduplicate(second, fingerprint(2L, 0));
+		Assertions.assertEquals(List.of("english1-20220620.mp3.properties", "english1-20220621.mp3.properties"), entries());
+
+		Files.delete(first);
+		Files.write(second, mp3("english", "2106-overwritten"));
+		Path third = Files.write(this.baseDir.resolve("english1-20220622.mp3"), mp3("english", "2206"));
+		Assertions.assertFalse(deduplicator.deduplicate(third, fingerprint(1L, 3)));
+		Assertions.assertEquals(List.of("english1-20220621.mp3.properties", "english1-20220622.mp3.properties"), entries());
+
+		Path fourth = Files.write(this.baseDir.resolve("english1-20220623.mp3"), mp3("english", "2306"));
+		Assertions.assertFalse(deduplicator.deduplicate(fourth, fingerprint(2L, 3)));
+		Assertions.assertEquals(List.of("english1-20220622.mp3.properties", "english1-20220623.mp3.properties"), entries());
+		try (Stream<Path> list = Files.walk(this.baseDir.resolve(".index").resolve("keys"))) {
+			Assertions.assertEquals(List.of("english1-20220622.mp3", "english1-20220623.mp3"),
+					list.filter(Files::isRegularFile).map(p -> p.getFileName().toString()).distinct().sorted().toList());
+		}
+	}
+
+	/**
+	 * 登録済みの録音ファイルのインデックス
+	 * @return インデックスのファイル名
+	 * @throws Exception
+	 */
+	private List<String> entries() throws Exception {
+		try (Stream<Path> list = Files.list(this.baseDir.resolve(".index").resolve("entries"))) {
+			return list.map(p -> p.getFileName().toString()).sorted().toList();
+		}
+	}
+
+	/**
+	 * 録音ファイルのインデックスの読み取り
+	 * @param _name 録音ファイル名
+	 * @return インデックスの内容
+	 * @throws Exception
+	 */
+	private Properties entry(String _name) throws Exception {
+		Properties entry = new Properties();
+		try (InputStream in = Files.newInputStream(this.baseDir.resolve(".index").resolve("entries").resolve(_name + ".properties"))) {
+			entry.load(in);
+		}
+		return entry;
+	}
+}
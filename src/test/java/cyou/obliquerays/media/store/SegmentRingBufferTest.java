@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2021 tasekida
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package cyou.obliquerays.media.store;
+
+import java.io.InputStream;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cyou.obliquerays.media.hls.HlsSegment;
+
+/** SegmentRingBufferのUnitTest */
+class SegmentRingBufferTest {
+	/** ロガー */
+	private static final Logger LOG = System.getLogger(SegmentRingBufferTest.class.getName());
+
+	/** 放送時刻の基準 */
+	private static final Instant T0 = Instant.parse("2022-06-19T21:00:00Z");
+
+	/** 出力ディレクトリ */
+	@TempDir
+	Path baseDir;
+
+	/** @throws java.lang.Exception */
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		try (InputStream resource = ClassLoader.getSystemResourceAsStream("logging.properties")) {
+            LogManager.getLogManager().readConfiguration(resource);
+        } catch (Throwable t) {
+        	LOG.log(Level.ERROR, "エラー終了", t);
+        }
+	}
+
+	/**
+	 * 10秒ごとのセグメント
+	 * @param _index セグメントの番号
+	 * @return セグメント
+	 */
+	private static HlsSegment segment(int _index) {
+		return new HlsSegment(_index, URI.create("https://example.com/" + _index + ".ts"), 10d, false, T0.plusSeconds(10L * _index));
+	}
+
+	/**
+	 * 30バイトのセグメントファイル
+	 * @param _index セグメントの番号
+	 * @return セグメントファイルの内容
+	 */
+	private static byte[] data(int _index) {
+		return String.format("%030d", _index).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * 容量を超えた古いセグメントは上書き
+	 * {@link cyou.obliquerays.media.store.SegmentRingBuffer#dump(Instant, Instant, Path)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testDumpCapacity() throws Exception {
+		SegmentRingBuffer ring = new SegmentRingBuffer(Duration.ofHours(1L), 100);
+		for (int i = 0; i < 5; i++)
+			ring.accept(segment(i), data(i));
+
+		Path file = this.baseDir.resolve("ring.ts");
+		Assertions.assertEquals(3, ring.dump(T0, T0.plusSeconds(60L), file));
+		String expected = new String(data(2), StandardCharsets.US_ASCII)
+				+ new String(data(3), StandardCharsets.US_ASCII)
+				+ new String(data(4), StandardCharsets.US_ASCII);
+		Assertions.assertEquals(expected, Files.readString(file, StandardCharsets.US_ASCII));
+		Assertions.assertEquals(T0.plusSeconds(20L), ring.getOldest());
+	}
+
+	/**
+	 * 保持時間を超えた古いセグメントは削除、指定した時間帯のみ出力
+	 * {@link cyou.obliquerays.media.store.SegmentRingBuffer#dump(Instant, Instant, Path)} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testDumpRetention() throws Exception {
+		SegmentRingBuffer ring = new SegmentRingBuffer(Duration.ofSeconds(30L), 1024);
+		for (int i = 0; i < 6; i++)
+			ring.accept(segment(i), data(i));
+
+		Assertions.assertEquals(T0.plusSeconds(20L), ring.getOldest());
+		Path file = this.baseDir.resolve("ring.ts");
+		Assertions.assertEquals(1, ring.dump(T0.plusSeconds(35L), T0.plusSeconds(39L), file));
+		Assertions.assertEquals(new String(data(3), StandardCharsets.US_ASCII), Files.readString(file, StandardCharsets.US_ASCII));
+		Assertions.assertEquals(0, ring.dump(T0, T0.plusSeconds(10L), this.baseDir.resolve("none.ts")));
+	}
+
+	/**
+	 * 放送時刻の無いセグメントはメディアシーケンス番号と再生時間から放送時刻を推定
+	 * {@link cyou.obliquerays.media.store.SegmentRingBuffer#accept(HlsSegment, byte[])} のためのテスト・メソッド。
+	 * @throws Exception
+	 */
+	@Test
+	void testAcceptWithoutProgramDateTime() throws Exception {
+		SegmentRingBuffer ring = new SegmentRingBuffer(Duration.ofHours(1L), 1024);
+		ring.accept(new HlsSegment(100L, URI.create("https://example.com/100.ts"), 10d, false), data(100));
+		Instant oldest = ring.getOldest();
+		ring.accept(new HlsSegment(102L, URI.create("https://example.com/102.ts"), 10d, false), data(102));
+		Thread.sleep(50L);
+		ring.accept(new HlsSegment(103L, URI.create("https://example.com/103.ts"), 10d, false), data(103));
+
+		Assertions.assertEquals(oldest.plusSeconds(40L), ring.getNewest());
+		Path file = this.baseDir.resolve("ring.ts");
+		Assertions.assertEquals(1, ring.dump(oldest.plusSeconds(20L), oldest.plusSeconds(30L), file));
+		Assertions.assertEquals(new String(data(102), StandardCharsets.US_ASCII), Files.readString(file, StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * 容量は1バイトから{@link Integer#MAX_VALUE}まで
+	 * {@link cyou.obliquerays.media.store.SegmentRingBuffer#SegmentRingBuffer(Duration, long)} のためのテスト・メソッド。
+	 */
+	@Test
+	void testCapacity() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new SegmentRingBuffer(Duration.ofHours(1L), 0L));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new SegmentRingBuffer(Duration.ofHours(1L), 2048L * 1024L * 1024L));
+		Assertions.assertEquals(100, new SegmentRingBuffer(Duration.ofHours(1L), 100L).getCapacity());
+	}
+}